@@ -0,0 +1,359 @@
+package com.omori.pdfconvertor;
+
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates synthetic Vietnamese POS registration forms laid out like the real ones,
+ * so that every label matched by {@link RegexExtractor} is present.
+ * A configurable fraction of the output is deliberately broken (truncated, garbage or empty files).
+ * Optionally some forms draw the accents of their values as separate glyphs over the letters, like
+ * some PDF generators do, and some carry an image (a stamp) on every page.
+ */
+public class FormCorpusGenerator {
+
+    private static final String[] FONT_CANDIDATES = {
+        "/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf",
+        "/usr/share/fonts/dejavu/DejaVuSans.ttf",
+        "/usr/share/fonts/TTF/DejaVuSans.ttf",
+        "/System/Library/Fonts/Supplemental/Arial.ttf",
+        "/Library/Fonts/Arial Unicode.ttf",
+        "C:/Windows/Fonts/arial.ttf"
+    };
+
+    private static final String[] BUSINESS_WORDS = {
+        "Cửa hàng", "Nhà thuốc", "Quán cà phê", "Siêu thị mini", "Tiệm vàng", "Nhà hàng", "Spa", "Khách sạn"
+    };
+    private static final String[] NAMES = {
+        "Hoàng Anh", "Minh Châu", "Phú Quý", "Thành Đạt", "Ngọc Lan", "Bảo Tín", "Hồng Phúc", "Đức Việt"
+    };
+    private static final String[] STREETS = {
+        "Lê Lợi", "Nguyễn Huệ", "Trần Hưng Đạo", "Hai Bà Trưng", "Điện Biên Phủ", "Cách Mạng Tháng Tám"
+    };
+    private static final String[] CITIES = {
+        "Quận 1, TP. Hồ Chí Minh", "Quận Hoàn Kiếm, Hà Nội", "Quận Hải Châu, Đà Nẵng", "TP. Cần Thơ"
+    };
+    private static final String[] DEVICES = {
+        "PAX A920 (Android)", "Verifone V200c - 4G", "Ingenico Move/5000", "PAX S90 [GPRS]"
+    };
+    private static final String[] NOTE_WORDS = {
+        "lắp", "máy", "tại", "quầy", "thu", "ngân", "liên", "hệ", "chủ", "cửa", "hàng", "trước", "khi",
+        "đến", "giờ", "hành", "chính", "cần", "giấy", "in", "hóa", "đơn", "thêm"
+    };
+    // Combining marks drawn as a separate spacing accent when separateAccentsFraction applies
+    private static final Map<Character, String> SPACING_ACCENTS = Map.of(
+        '\u0300', "`", '\u0301', "\u00B4", '\u0302', "\u02C6", '\u0303', "\u02DC", '\u0306', "\u02D8");
+    private static final String FILLER =
+        "Đơn vị chấp nhận thẻ cam kết tuân thủ các điều khoản và điều kiện sử dụng dịch vụ thanh toán thẻ.";
+
+    /** Knobs for the generated corpus. */
+    public static class Options {
+        int files = 1000;
+        int minPages = 1;
+        int maxPages = 3;
+        int fillerLinesPerPage = 20;
+        int minNoteLength = 0;
+        int maxNoteLength = 200;
+        double wrapIdsFraction = 0.3;
+        double brokenFraction = 0.02;
+        // Forms whose values show their accents (ˆ ` ´ ˜ ˘) as separate glyphs, before or after the letter
+        double separateAccentsFraction = 0;
+        // Forms with an image XObject on every page
+        double imageFraction = 0;
+        long seed = 42;
+        String fontPath;
+    }
+
+    private final Options options;
+    private final File fontFile;
+    // TTFParser output is not thread-safe, so every generator thread parses its own copy
+    private final ThreadLocal<TrueTypeFont> fonts;
+
+    public FormCorpusGenerator(Options options) {
+        this.options = options;
+        this.fontFile = findFont(options.fontPath);
+        this.fonts = ThreadLocal.withInitial(() -> {
+            try {
+                return new TTFParser().parse(fontFile);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot load font " + fontFile, e);
+            }
+        });
+    }
+
+    /**
+     * Writes {@code options.files} PDFs into the directory, named {@code form-000001.pdf} and so on.
+     * @return Number of broken files among them
+     */
+    public int generate(File dir) throws Exception {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 1; i <= options.files; i++) {
+                final int number = i;
+                futures.add(executor.submit(() -> generateOne(dir, number)));
+            }
+            int broken = 0;
+            for (Future<Boolean> future : futures) {
+                if (future.get()) {
+                    broken++;
+                }
+            }
+            return broken;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** @return true when a broken file was written */
+    private boolean generateOne(File dir, int number) throws IOException {
+        // Seed per file so a corpus is reproducible regardless of thread scheduling
+        Random random = new Random(options.seed * 1_000_003L + number);
+        File target = new File(dir, String.format("form-%06d.pdf", number));
+
+        boolean broken = random.nextDouble() < options.brokenFraction;
+        byte[] pdf = buildForm(random);
+        if (broken) {
+            Files.write(target.toPath(), corrupt(pdf, random));
+        } else {
+            Files.write(target.toPath(), pdf);
+        }
+        return broken;
+    }
+
+    private byte[] buildForm(Random random) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDFont font = PDType0Font.load(document, fonts.get(), true);
+            int pages = options.minPages + random.nextInt(options.maxPages - options.minPages + 1);
+            // Drawn only when enabled, so corpora without these options stay the same for a seed
+            boolean separateAccents = options.separateAccentsFraction > 0 && random.nextDouble() < options.separateAccentsFraction;
+            PDImageXObject image = options.imageFraction > 0 && random.nextDouble() < options.imageFraction
+                    ? stamp(document, random) : null;
+
+            List<String> firstPage = new ArrayList<>();
+            firstPage.add("PHIẾU ĐĂNG KÝ LẮP ĐẶT MÁY POS");
+            firstPage.add("Tên pháp lý (Theo giấy phép kinh doanh): CÔNG TY TNHH " + pick(random, NAMES).toUpperCase()
+                    + " - GRP" + (100 + random.nextInt(900)));
+            firstPage.add("Tên kinh doanh (tiếng Việt): " + pick(random, BUSINESS_WORDS) + " " + pick(random, NAMES));
+            firstPage.add("Địa chỉ lắp máy: " + (1 + random.nextInt(300)) + " " + pick(random, STREETS) + ", "
+                    + pick(random, CITIES));
+            firstPage.add("Loại máy: " + pick(random, DEVICES));
+            firstPage.add("Số S/N của máy EDC: " + digits(random, 10));
+            addId(firstPage, "MID VND ", digits(random, 12), random);
+            String tid = (random.nextBoolean() ? "1239" : "1200") + digits(random, 4);
+            addId(firstPage, "TID VND ", tid, random);
+            addNotes(firstPage, random);
+            firstPage.add("Ngày " + (1 + random.nextInt(28)) + " tháng " + (1 + random.nextInt(12)) + " năm 2025");
+
+            for (int page = 0; page < pages; page++) {
+                List<String> lines = page == 0 ? firstPage : new ArrayList<>();
+                for (int i = 0; i < options.fillerLinesPerPage; i++) {
+                    lines.add(FILLER);
+                }
+                writePage(document, font, lines, separateAccents ? random : null, image);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    /** MID/TID values are sometimes wrapped onto a second line like in the scanned originals. */
+    private void addId(List<String> lines, String label, String value, Random random) {
+        if (random.nextDouble() < options.wrapIdsFraction) {
+            int cut = 2 + random.nextInt(value.length() - 3);
+            lines.add(label + value.substring(0, cut));
+            lines.add(value.substring(cut));
+        } else {
+            lines.add(label + value);
+        }
+    }
+
+    private void addNotes(List<String> lines, Random random) {
+        int length = options.minNoteLength
+                + random.nextInt(Math.max(1, options.maxNoteLength - options.minNoteLength + 1));
+        StringBuilder line = new StringBuilder("Ghi chú:");
+        int written = 0;
+        while (written < length) {
+            String word = pick(random, NOTE_WORDS);
+            if (line.length() + word.length() > 80) {
+                lines.add(line.toString());
+                line.setLength(0);
+            }
+            line.append(' ').append(word);
+            written += word.length() + 1;
+        }
+        lines.add(line.toString());
+    }
+
+    /**
+     * @param accentRandom Non-null to draw the accents of values as separate glyphs
+     * @param image Image to draw at the bottom of the page, or null
+     */
+    private static void writePage(PDDocument document, PDFont font, List<String> lines, Random accentRandom,
+                                  PDImageXObject image) throws IOException {
+        PDPage page = new PDPage(PDRectangle.A4);
+        document.addPage(page);
+        try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+            content.beginText();
+            content.setFont(font, 10);
+            content.setLeading(13);
+            content.newLineAtOffset(40, PDRectangle.A4.getHeight() - 50);
+            for (String line : lines) {
+                if (accentRandom != null) {
+                    content.showTextWithPositioning(separateAccents(font, line, accentRandom));
+                } else {
+                    content.showText(line);
+                }
+                content.newLine();
+            }
+            content.endText();
+            if (image != null) {
+                content.drawImage(image, 400, 30, 120, 60);
+            }
+        }
+    }
+
+    /**
+     * TJ operands for a line whose accents after the label (the text up to the first ": ") are shown as
+     * spacing accents centred over their letters, drawn before or after the letter at random.
+     * Marks without a spacing form (hook, dot below, horn) stay in the letter.
+     */
+    private static Object[] separateAccents(PDFont font, String line, Random random) throws IOException {
+        List<Object> operands = new ArrayList<>();
+        StringBuilder run = new StringBuilder(line.substring(0, line.indexOf(": ") + 1));
+        for (int i = run.length(); i < line.length(); i++) {
+            String decomposed = Normalizer.normalize(line.substring(i, i + 1), Normalizer.Form.NFD);
+            StringBuilder letter = new StringBuilder().append(decomposed.charAt(0));
+            List<String> accents = new ArrayList<>();
+            for (int m = 1; m < decomposed.length(); m++) {
+                String accent = SPACING_ACCENTS.get(decomposed.charAt(m));
+                if (accent != null) {
+                    accents.add(accent);
+                } else {
+                    letter.append(decomposed.charAt(m));
+                }
+            }
+            if (accents.isEmpty()) {
+                run.append(line.charAt(i));
+                continue;
+            }
+            if (run.length() > 0) {
+                operands.add(run.toString());
+                run.setLength(0);
+            }
+
+            // Positive TJ numbers move left, in thousandths of the font size like the glyph widths
+            String base = Normalizer.normalize(letter, Normalizer.Form.NFC);
+            float baseWidth = font.getStringWidth(base);
+            boolean accentsFirst = random.nextBoolean();
+            if (!accentsFirst) {
+                operands.add(base);
+            }
+            for (String accent : accents) {
+                float accentWidth = font.getStringWidth(accent);
+                if (accentsFirst) {
+                    operands.add(-(baseWidth - accentWidth) / 2);
+                    operands.add(accent);
+                    operands.add((baseWidth + accentWidth) / 2);
+                } else {
+                    operands.add((baseWidth + accentWidth) / 2);
+                    operands.add(accent);
+                    operands.add(-(baseWidth - accentWidth) / 2);
+                }
+            }
+            if (accentsFirst) {
+                operands.add(base);
+            }
+        }
+        if (run.length() > 0) {
+            operands.add(run.toString());
+        }
+        return operands.toArray();
+    }
+
+    /** A small noisy RGB image, like a scanned stamp or signature. */
+    private static PDImageXObject stamp(PDDocument document, Random random) throws IOException {
+        BufferedImage image = new BufferedImage(160, 80, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int ink = random.nextInt(8) == 0 ? 0x1F3F9F : 0xFFFFFF;
+                image.setRGB(x, y, ink);
+            }
+        }
+        return LosslessFactory.createFromImage(document, image);
+    }
+
+    private static byte[] corrupt(byte[] pdf, Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                // Truncated download
+                byte[] truncated = new byte[pdf.length / 2];
+                System.arraycopy(pdf, 0, truncated, 0, truncated.length);
+                return truncated;
+            case 1:
+                // Not a PDF at all
+                byte[] garbage = new byte[1024 + random.nextInt(4096)];
+                random.nextBytes(garbage);
+                return garbage;
+            default:
+                return new byte[0];
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String digits(Random random, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append((char) ('0' + random.nextInt(10)));
+        }
+        return sb.toString();
+    }
+
+    private static File findFont(String explicitPath) {
+        if (explicitPath != null) {
+            File font = new File(explicitPath);
+            if (!font.isFile()) {
+                throw new IllegalArgumentException("Font not found: " + explicitPath);
+            }
+            return font;
+        }
+        for (String candidate : FONT_CANDIDATES) {
+            File font = new File(candidate);
+            if (font.isFile()) {
+                return font;
+            }
+        }
+        throw new IllegalStateException("No TrueType font with Vietnamese glyphs found, pass --font <path.ttf>");
+    }
+}
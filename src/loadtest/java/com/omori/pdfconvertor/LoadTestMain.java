@@ -0,0 +1,164 @@
+package com.omori.pdfconvertor;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load test: generates (or reuses) a synthetic form corpus and runs the full
+ * {@link PDFToExcelService#convertFolderToExcel} over it, then reports throughput,
+ * per-file latency percentiles, peak heap / RSS and workbook size.
+ * <p>
+ * Run with {@code ./gradlew loadTest -PloadtestArgs="--files 50000 --pages 1-4"}.
+ * Options: {@code --files N --dir PATH --pages MIN-MAX --filler-lines N --notes MIN-MAX
+ * --wrap FRACTION --broken FRACTION --accents FRACTION --images FRACTION --seed N --font PATH.ttf --regenerate}.
+ */
+public class LoadTestMain {
+
+    private static final long HEAP_SAMPLE_MS = 50;
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    public static void main(String[] args) throws Exception {
+        FormCorpusGenerator.Options options = new FormCorpusGenerator.Options();
+        File dir = null;
+        boolean regenerate = false;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--files": options.files = Integer.parseInt(args[++i]); break;
+                case "--dir": dir = new File(args[++i]); break;
+                case "--pages": {
+                    int[] range = parseRange(args[++i]);
+                    options.minPages = range[0];
+                    options.maxPages = range[1];
+                    break;
+                }
+                case "--filler-lines": options.fillerLinesPerPage = Integer.parseInt(args[++i]); break;
+                case "--notes": {
+                    int[] range = parseRange(args[++i]);
+                    options.minNoteLength = range[0];
+                    options.maxNoteLength = range[1];
+                    break;
+                }
+                case "--wrap": options.wrapIdsFraction = Double.parseDouble(args[++i]); break;
+                case "--broken": options.brokenFraction = Double.parseDouble(args[++i]); break;
+                case "--accents": options.separateAccentsFraction = Double.parseDouble(args[++i]); break;
+                case "--images": options.imageFraction = Double.parseDouble(args[++i]); break;
+                case "--seed": options.seed = Long.parseLong(args[++i]); break;
+                case "--font": options.fontPath = args[++i]; break;
+                case "--regenerate": regenerate = true; break;
+                default:
+                    System.err.println("Unknown option: " + arg);
+                    System.exit(64);
+            }
+        }
+        if (dir == null) {
+            dir = new File("build/loadtest/corpus-" + options.files);
+        }
+
+        int existing = PDFToExcelService.listPdfFiles(dir).length;
+        if (regenerate || existing != options.files) {
+            System.out.printf("Generating %d forms into %s ...%n", options.files, dir.getAbsolutePath());
+            long started = System.nanoTime();
+            int broken = new FormCorpusGenerator(options).generate(dir);
+            System.out.printf("Generated in %.1fs (%d broken)%n", (System.nanoTime() - started) / 1e9, broken);
+        } else {
+            System.out.printf("Reusing %d forms in %s%n", existing, dir.getAbsolutePath());
+        }
+
+        run(dir, options.files);
+    }
+
+    private static void run(File dir, int files) throws InterruptedException {
+        PDFToExcelService service = new PDFToExcelService();
+        long[] latencies = new long[files];
+        AtomicInteger latencyCount = new AtomicInteger();
+        service.setFileLatencyListener(nanos -> {
+            int slot = latencyCount.getAndIncrement();
+            if (slot < latencies.length) {
+                latencies[slot] = nanos;
+            }
+        });
+
+        // Sample heap usage instead of summing per-pool peaks, which overstates the real peak
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        AtomicLong peakHeap = new AtomicLong();
+        Thread heapSampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(HEAP_SAMPLE_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "loadtest-heap-sampler");
+        heapSampler.setDaemon(true);
+        heapSampler.start();
+
+        long started = System.nanoTime();
+        String result = service.convertFolderToExcel(dir, null);
+        double elapsedSec = (System.nanoTime() - started) / 1e9;
+
+        heapSampler.interrupt();
+        heapSampler.join();
+
+        int measured = Math.min(latencyCount.get(), latencies.length);
+        long[] sorted = Arrays.copyOf(latencies, measured);
+        Arrays.sort(sorted);
+        File workbook = new File(PDFToExcelService.excelPathFor(dir));
+
+        System.out.println();
+        System.out.println("Result:           " + result);
+        System.out.printf("Files:            %d in %.2fs%n", files, elapsedSec);
+        System.out.printf("Throughput:       %.1f files/s%n", files / elapsedSec);
+        System.out.printf("Latency p50:      %.1f ms%n", percentileMs(sorted, 0.50));
+        System.out.printf("Latency p99:      %.1f ms%n", percentileMs(sorted, 0.99));
+        System.out.printf("Latency max:      %.1f ms%n", measured > 0 ? sorted[measured - 1] / 1e6 : 0);
+        System.out.printf("Peak heap:        %.1f MB (max %.1f MB)%n",
+                peakHeap.get() / 1048576.0, Runtime.getRuntime().maxMemory() / 1048576.0);
+        System.out.println("Peak RSS:         " + peakRss());
+        System.out.printf("Workbook size:    %.1f KB%n", workbook.length() / 1024.0);
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    /** VmHWM from /proc, Linux only. */
+    private static String peakRss() {
+        if (!Files.isReadable(PROC_STATUS)) {
+            return "n/a";
+        }
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS)) {
+                if (line.startsWith("VmHWM:")) {
+                    long kb = Long.parseLong(line.replaceAll("[^0-9]", ""));
+                    return String.format("%.1f MB", kb / 1024.0);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // fall through
+        }
+        return "n/a";
+    }
+
+    private static int[] parseRange(String value) {
+        String[] parts = value.split("-", 2);
+        int min = Integer.parseInt(parts[0].trim());
+        int max = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : min;
+        return new int[]{min, Math.max(min, max)};
+    }
+}
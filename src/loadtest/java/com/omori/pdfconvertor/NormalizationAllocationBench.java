@@ -0,0 +1,115 @@
+package com.omori.pdfconvertor;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Allocation-rate benchmark for per-file field normalization: the old {@code replace}/{@code replaceAll}/
+ * {@code split} chains against {@link FieldNormalizer}. Reports bytes allocated per file (one MID, TID,
+ * TID 00, POS device and notes value each) and checks both produce the same strings.
+ * <p>
+ * Run with {@code ./gradlew normalizationBench}.
+ */
+public class NormalizationAllocationBench {
+
+    private static final int SAMPLES = 1024;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 500;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String[][] samples = buildSamples(new Random(7));
+
+        // MID is left out: the old chain kept wrapped line breaks, which the row parser then cut off
+        int mismatches = 0;
+        for (String[] sample : samples) {
+            String[] expected = legacy(sample);
+            String[] actual = current(sample);
+            for (int field = 1; field < expected.length; field++) {
+                if (!expected[field].equals(actual[field])) {
+                    mismatches++;
+                    break;
+                }
+            }
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runLegacy(samples);
+            runCurrent(samples);
+        }
+
+        long legacyBytes = measure(threads, () -> runLegacy(samples));
+        long currentBytes = measure(threads, () -> runCurrent(samples));
+        double files = (double) SAMPLES * MEASURED_ROUNDS;
+
+        System.out.printf("Legacy chains:    %.0f bytes/file%n", legacyBytes / files);
+        System.out.printf("FieldNormalizer:  %.0f bytes/file%n", currentBytes / files);
+        System.out.printf("Reduction:        %.1f%%%n", 100.0 * (legacyBytes - currentBytes) / legacyBytes);
+        System.out.printf("Output mismatches: %d/%d%n", mismatches, SAMPLES);
+    }
+
+    private static long measure(com.sun.management.ThreadMXBean threads, Runnable round) {
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            round.run();
+        }
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    private static void runLegacy(String[][] samples) {
+        for (String[] sample : samples) {
+            sink = legacy(sample);
+        }
+    }
+
+    private static void runCurrent(String[][] samples) {
+        for (String[] sample : samples) {
+            sink = current(sample);
+        }
+    }
+
+    /** Raw regex groups as RegexExtractor sees them: {mid, tid, device, notes}. */
+    private static String[][] buildSamples(Random random) {
+        String[] devices = {"PAX A920 (Android)", "Verifone V200c - 4G", "Ingenico Move/5000", "PAX S90 [GPRS]"};
+        String[] words = {"lắp", "máy", "tại", "quầy", "thu", "ngân", "liên", "hệ", "trước", "khi"};
+        String[][] samples = new String[SAMPLES][];
+        for (int i = 0; i < SAMPLES; i++) {
+            String mid = digits(random, 6) + (random.nextBoolean() ? "\n" : " ") + digits(random, 6) + "\n";
+            String tid = (random.nextBoolean() ? "1239" : "1200") + (random.nextBoolean() ? " \r\n" : "") + digits(random, 4);
+            StringBuilder notes = new StringBuilder();
+            for (int w = random.nextInt(30); w > 0; w--) {
+                notes.append(words[random.nextInt(words.length)]).append(random.nextInt(5) == 0 ? " \n  " : " ");
+            }
+            samples[i] = new String[]{mid, tid, devices[random.nextInt(devices.length)], notes.toString()};
+        }
+        return samples;
+    }
+
+    // Normalization chains as they were before FieldNormalizer
+    private static String[] legacy(String[] sample) {
+        String mid = sample[0].trim().replace(" ", "").trim();
+        String tid = sample[1].trim().replace(" ", "").replace("\n", "").replace("\r", "").trim();
+        String tid00 = tid.length() >= 4 && tid.substring(2, 4).equals("39")
+                ? tid.substring(0, 2) + "00" + tid.substring(4) : tid;
+        String device = sample[2].trim().split("[^a-zA-Z0-9 ]+")[0].trim();
+        String notes = sample[3].trim().replaceAll("\\s+", " ").trim();
+        return new String[]{mid, tid, tid00, device, notes};
+    }
+
+    private static String[] current(String[] sample) {
+        String mid = FieldNormalizer.stripWhitespace(sample[0]);
+        String tid = FieldNormalizer.stripWhitespace(sample[1]);
+        return new String[]{mid, tid, FieldNormalizer.terminalId00(tid),
+                FieldNormalizer.cutAtFirstNonAlphanumeric(sample[2]), FieldNormalizer.collapseWhitespace(sample[3])};
+    }
+
+    private static String digits(Random random, int count) {
+        char[] chars = new char[count];
+        for (int i = 0; i < count; i++) {
+            chars[i] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,134 @@
+package com.omori.pdfconvertor;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares {@link PDFTextStripper} with {@link TextOnlyStripper} on a generated form corpus:
+ * CPU time and bytes allocated per page for each engine, and whether {@link RegexExtractor}
+ * gets the same fields from both texts.
+ * <p>
+ * Run with {@code ./gradlew textEngineBench}, optionally {@code -PbenchArgs="--files 300 --dir PATH"}.
+ * {@code --accents FRACTION} and {@code --images FRACTION} set the share of forms drawing their accents
+ * as separate glyphs and carrying an image (0.3 each by default).
+ */
+public class TextEngineBench {
+
+    private static final int WARMUP_ROUNDS = 2;
+
+    public static void main(String[] args) throws Exception {
+        FormCorpusGenerator.Options options = new FormCorpusGenerator.Options();
+        options.files = 200;
+        options.brokenFraction = 0;
+        options.separateAccentsFraction = 0.3;
+        options.imageFraction = 0.3;
+        File dir = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--files": options.files = Integer.parseInt(args[++i]); break;
+                case "--dir": dir = new File(args[++i]); break;
+                case "--font": options.fontPath = args[++i]; break;
+                case "--accents": options.separateAccentsFraction = Double.parseDouble(args[++i]); break;
+                case "--images": options.imageFraction = Double.parseDouble(args[++i]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(64);
+            }
+        }
+        if (dir == null) {
+            dir = new File("build/loadtest/engine-corpus-" + options.files
+                    + "-a" + options.separateAccentsFraction + "-i" + options.imageFraction);
+        }
+        if (PDFToExcelService.listPdfFiles(dir).length != options.files) {
+            System.out.printf("Generating %d forms into %s ...%n", options.files, dir.getAbsolutePath());
+            new FormCorpusGenerator(options).generate(dir);
+        }
+        File[] pdfFiles = PDFToExcelService.listPdfFiles(dir);
+
+        List<String[]> stripperTexts = new ArrayList<>();
+        List<String[]> liteTexts = new ArrayList<>();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            stripAll(pdfFiles, false, null);
+            stripAll(pdfFiles, true, null);
+        }
+        long[] stripperCost = stripAll(pdfFiles, false, stripperTexts);
+        long[] liteCost = stripAll(pdfFiles, true, liteTexts);
+
+        int pages = 0;
+        int textMismatches = 0;
+        int fieldMismatches = 0;
+        for (int f = 0; f < pdfFiles.length; f++) {
+            String[] expected = stripperTexts.get(f);
+            String[] actual = liteTexts.get(f);
+            pages += expected.length;
+            for (int p = 0; p < expected.length; p++) {
+                if (!expected[p].equals(actual[p])) {
+                    textMismatches++;
+                }
+            }
+            String expectedFields = RegexExtractor.extractSpecificData(String.join("", expected));
+            String actualFields = RegexExtractor.extractSpecificData(String.join("", actual));
+            if (!expectedFields.equals(actualFields)) {
+                fieldMismatches++;
+                if (fieldMismatches <= 3) {
+                    System.out.printf("Field mismatch in %s:%n--- PDFTextStripper%n%s%n--- TextOnlyStripper%n%s%n",
+                            pdfFiles[f].getName(), expectedFields, actualFields);
+                }
+            }
+        }
+
+        System.out.printf("Files: %d, pages: %d%n", pdfFiles.length, pages);
+        System.out.printf("PDFTextStripper:  %.0f us CPU/page, %.0f KB allocated/page%n",
+                stripperCost[0] / 1e3 / pages, stripperCost[1] / 1024.0 / pages);
+        System.out.printf("TextOnlyStripper: %.0f us CPU/page, %.0f KB allocated/page%n",
+                liteCost[0] / 1e3 / pages, liteCost[1] / 1024.0 / pages);
+        System.out.printf("Pages with different text: %d/%d%n", textMismatches, pages);
+        System.out.printf("Files with different extracted fields: %d/%d%n", fieldMismatches, pdfFiles.length);
+    }
+
+    /**
+     * Strips every page of every file on this thread, loading documents outside the measurement.
+     * @return {cpuNanos, allocatedBytes} spent in text extraction
+     */
+    private static long[] stripAll(File[] pdfFiles, boolean lite, List<String[]> texts) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long cpu = 0;
+        long allocated = 0;
+        for (File pdfFile : pdfFiles) {
+            try (PDDocument document = PDDocument.load(pdfFile)) {
+                String[] pageTexts = new String[document.getNumberOfPages()];
+                long cpuBefore = threads.getCurrentThreadCpuTime();
+                long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+
+                if (lite) {
+                    TextOnlyStripper stripper = new TextOnlyStripper();
+                    for (int page = 0; page < pageTexts.length; page++) {
+                        pageTexts[page] = stripper.getText(document, page);
+                    }
+                } else {
+                    PDFTextStripper stripper = new PDFTextStripper();
+                    stripper.setSortByPosition(false);
+                    stripper.setSuppressDuplicateOverlappingText(true);
+                    for (int page = 0; page < pageTexts.length; page++) {
+                        stripper.setStartPage(page + 1);
+                        stripper.setEndPage(page + 1);
+                        pageTexts[page] = stripper.getText(document);
+                    }
+                }
+
+                cpu += threads.getCurrentThreadCpuTime() - cpuBefore;
+                allocated += threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+                if (texts != null) {
+                    texts.add(pageTexts);
+                }
+            }
+        }
+        return new long[]{cpu, allocated};
+    }
+}
@@ -0,0 +1,247 @@
+package com.omori.pdfconvertor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Hill-climbing controller for the per-folder PDF worker pool.
+ * Samples throughput (files/sec), GC time, heap occupancy and I/O wait at a fixed
+ * interval and grows or shrinks the pool one worker at a time, backing off hard
+ * when the heap gets close to its limit.
+ */
+public class AdaptiveParallelismController implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveParallelismController.class);
+
+    private static final long SAMPLE_INTERVAL_MS = 2000;
+    private static final double HEAP_HIGH_WATERMARK = 0.85;   // halve workers above this
+    private static final double GC_TIME_LIMIT = 0.15;         // fraction of wall time spent in GC
+    private static final double IO_WAIT_HIGH = 0.20;          // fraction of CPU time waiting on I/O
+    private static final double MIN_IMPROVEMENT = 0.05;       // throughput change treated as noise
+    private static final Path PROC_STAT = Paths.get("/proc/stat");
+
+    private final ThreadPoolExecutor executor;
+    private final IntSupplier completedCount;
+    private final String label;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final ScheduledExecutorService sampler;
+
+    // Sampler state, only touched from the sampler thread
+    private long lastSampleNanos;
+    private int lastCompleted;
+    private long lastGcTimeMs;
+    private long[] lastCpuTicks;
+    private double lastThroughput = -1;
+    private int direction = 1;
+
+    private AdaptiveParallelismController(ThreadPoolExecutor executor, IntSupplier completedCount, String label) {
+        this.executor = executor;
+        this.completedCount = completedCount;
+        this.label = label;
+        this.minWorkers = 1;
+        this.maxWorkers = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+        this.sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pdf-parallelism-" + label);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts sampling the given pool. The pool should be created with equal core and max sizes.
+     * @param executor Worker pool to resize
+     * @param completedCount Number of files finished so far
+     * @param label Name used in log lines (usually the folder name)
+     */
+    public static AdaptiveParallelismController start(ThreadPoolExecutor executor, IntSupplier completedCount, String label) {
+        AdaptiveParallelismController controller = new AdaptiveParallelismController(executor, completedCount, label);
+        controller.lastSampleNanos = System.nanoTime();
+        controller.lastCompleted = completedCount.getAsInt();
+        controller.lastGcTimeMs = totalGcTimeMs();
+        controller.lastCpuTicks = readCpuTicks();
+        logger.info("[{}] Adaptive parallelism: starting with {} workers (range {}-{})",
+                label, executor.getCorePoolSize(), controller.minWorkers, controller.maxWorkers);
+        controller.sampler.scheduleAtFixedRate(controller::sampleSafely,
+                SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        return controller;
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (Exception e) {
+            logger.warn("[{}] Adaptive parallelism sample failed: {}", label, e.getMessage(), e);
+        }
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        double elapsedSec = (now - lastSampleNanos) / 1_000_000_000.0;
+        if (elapsedSec <= 0) {
+            return;
+        }
+
+        int completed = completedCount.getAsInt();
+        double throughput = (completed - lastCompleted) / elapsedSec;
+
+        long gcTimeMs = totalGcTimeMs();
+        double gcFraction = (gcTimeMs - lastGcTimeMs) / (elapsedSec * 1000.0);
+
+        long[] cpuTicks = readCpuTicks();
+        double ioWait = ioWaitFraction(lastCpuTicks, cpuTicks);
+
+        double heapOccupancy = heapOccupancy();
+
+        int current = executor.getCorePoolSize();
+        int target = current;
+        String reason;
+
+        if (heapOccupancy >= HEAP_HIGH_WATERMARK) {
+            target = Math.max(minWorkers, current / 2);
+            direction = -1;
+            reason = "heap near limit";
+        } else if (gcFraction >= GC_TIME_LIMIT) {
+            target = current - 1;
+            direction = -1;
+            reason = "GC pressure";
+        } else if (lastThroughput < 0) {
+            target = current + 1;
+            direction = 1;
+            reason = "initial probe";
+        } else if (throughput > lastThroughput * (1 + MIN_IMPROVEMENT)) {
+            target = current + direction;
+            reason = "throughput improved";
+        } else if (throughput < lastThroughput * (1 - MIN_IMPROVEMENT)) {
+            direction = -direction;
+            target = current + direction;
+            reason = "throughput dropped, reversing";
+        } else if (ioWait >= IO_WAIT_HIGH) {
+            target = current + 1;
+            direction = 1;
+            reason = "I/O wait high";
+        } else {
+            reason = "plateau";
+        }
+
+        // No point growing once the queue has drained
+        if (target > current && executor.getQueue().isEmpty()) {
+            target = current;
+            reason = reason + ", queue empty";
+        }
+        target = Math.max(minWorkers, Math.min(maxWorkers, target));
+
+        String metrics = String.format("%.2f files/s, gc %.1f%%, heap %.1f%%, iowait %s",
+                throughput, gcFraction * 100, heapOccupancy * 100,
+                ioWait < 0 ? "n/a" : String.format("%.1f%%", ioWait * 100));
+        if (target != current) {
+            resize(current, target);
+            logger.info("[{}] Adaptive parallelism: {} -> {} workers ({}; {})", label, current, target, reason, metrics);
+        } else {
+            logger.debug("[{}] Adaptive parallelism: holding {} workers ({}; {})", label, current, reason, metrics);
+        }
+
+        lastSampleNanos = now;
+        lastCompleted = completed;
+        lastGcTimeMs = gcTimeMs;
+        lastCpuTicks = cpuTicks;
+        lastThroughput = throughput;
+    }
+
+    private void resize(int current, int target) {
+        // Core size may never exceed max size, so order the two calls by direction
+        if (target > current) {
+            executor.setMaximumPoolSize(target);
+            executor.setCorePoolSize(target);
+        } else {
+            executor.setCorePoolSize(target);
+            executor.setMaximumPoolSize(target);
+        }
+    }
+
+    private static long totalGcTimeMs() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long time = gc.getCollectionTime();
+            if (time > 0) {
+                total += time;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Heap occupancy as seen after the most recent collection, so that short-lived garbage
+     * between collections does not trigger a back-off. Falls back to current usage.
+     */
+    private static double heapOccupancy() {
+        long max = Runtime.getRuntime().maxMemory();
+        if (max <= 0 || max == Long.MAX_VALUE) {
+            return 0;
+        }
+        long used = 0;
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage == null) {
+                usage = pool.getUsage();
+            }
+            used += usage.getUsed();
+        }
+        return (double) used / max;
+    }
+
+    /** Aggregate CPU ticks from /proc/stat, or null when not on Linux. */
+    private static long[] readCpuTicks() {
+        if (!Files.isReadable(PROC_STAT)) {
+            return null;
+        }
+        try {
+            String cpuLine = Files.readAllLines(PROC_STAT).get(0);
+            String[] parts = cpuLine.trim().split("\\s+");
+            long[] ticks = new long[parts.length - 1];
+            for (int i = 1; i < parts.length; i++) {
+                ticks[i - 1] = Long.parseLong(parts[i]);
+            }
+            return ticks;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static double ioWaitFraction(long[] before, long[] after) {
+        // Column order: user nice system idle iowait ...
+        if (before == null || after == null || before.length < 5 || after.length < 5) {
+            return -1;
+        }
+        long total = 0;
+        for (int i = 0; i < Math.min(before.length, after.length); i++) {
+            total += after[i] - before[i];
+        }
+        return total > 0 ? (double) (after[4] - before[4]) / total : -1;
+    }
+
+    @Override
+    public void close() {
+        sampler.shutdownNow();
+        logger.info("[{}] Adaptive parallelism: finished with {} workers", label, executor.getCorePoolSize());
+    }
+}
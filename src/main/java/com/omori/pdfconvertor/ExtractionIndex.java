@@ -0,0 +1,584 @@
+package com.omori.pdfconvertor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Append-only local index of the MID, TID, TID 00 and serial number of every converted row,
+ * pointing back to the folder, file and time of the extraction.
+ * <p>
+ * Every conversion adds one immutable segment file, sorted by value, that is written to a temp
+ * file and renamed into place. Lookups memory-map each segment and binary search its offset table,
+ * so a point query costs a few page reads per segment. Segments are compacted size-tiered: whenever
+ * {@link #MERGE_FACTOR} segments of similar size (one tier, within a factor of {@link #TIER_FACTOR})
+ * exist they are merged into one segment of the next tier, so each value is rewritten only about
+ * log(index size) times and the segment count stays logarithmic. Merges read their inputs sequentially
+ * instead of mapping them; an input that cannot be deleted afterwards (on Windows, while a lookup
+ * still maps it) gets an empty {@code .merged} tombstone next to it, so that lookups and later
+ * compactions skip it, and is removed by a later compaction.
+ * <pre>
+ *   segment: int magic, int version, int count, int[count] entry offsets (sorted by value),
+ *            entries: short valueLength, value, byte field, long extractedAt,
+ *                     short folderLength, folder, short fileLength, file      (strings in UTF-8)
+ * </pre>
+ * Location: {@code ~/.pdf-convertor/index}, or {@code -Dpdf.index.dir=...}; {@code -Dpdf.index=off} disables it.
+ */
+public class ExtractionIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ExtractionIndex.class);
+
+    static final String DIR_PROPERTY = "pdf.index.dir";
+    static final String ENABLED_PROPERTY = "pdf.index";
+
+    private static final int MAGIC = 0x50444958; // "PDIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    static final int MERGE_FACTOR = 4;
+    private static final long TIER_FACTOR = 4;
+    // Upper size of the smallest tier; a single conversion usually writes a segment well below it
+    private static final long MIN_TIER_BYTES = 64L << 10;
+    // Offsets are ints, so a merged segment must stay well below 2GB; bigger segments are left as they are
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+    private static final String TOMBSTONE_SUFFIX = ".merged";
+
+    /** Indexed columns; the ordinal is stored in the segment, so only append new ones. */
+    public enum Field {
+        MID("MID"), TID("TID"), TID00("TID 00"), SERIAL("Serial");
+
+        final String label;
+
+        Field(String label) {
+            this.label = label;
+        }
+    }
+
+    /** One indexed occurrence of a value. */
+    public static final class Hit {
+        public final Field field;
+        public final String value;
+        public final String folder;
+        public final String file;
+        public final long extractedAt;
+
+        Hit(Field field, String value, String folder, String file, long extractedAt) {
+            this.field = field;
+            this.value = value;
+            this.folder = folder;
+            this.file = file;
+            this.extractedAt = extractedAt;
+        }
+    }
+
+    private final Path dir;
+
+    public ExtractionIndex(Path dir) {
+        this.dir = dir;
+    }
+
+    /** Index at {@code -Dpdf.index.dir}, or {@code ~/.pdf-convertor/index}. */
+    public static ExtractionIndex openDefault() {
+        String configured = System.getProperty(DIR_PROPERTY);
+        Path dir = configured != null && !configured.isBlank()
+                ? Paths.get(configured)
+                : Paths.get(System.getProperty("user.home"), ".pdf-convertor", "index");
+        return new ExtractionIndex(dir);
+    }
+
+    /**
+     * Adds the rows of a finished conversion to the default index. Never fails the conversion:
+     * problems are only logged.
+     */
+    static void recordConversion(File folder, Collection<PDFToExcelService.PDFResult> results) {
+        if ("off".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY, "on")) || results.isEmpty()) {
+            return;
+        }
+        try {
+            openDefault().append(folder, results, System.currentTimeMillis());
+        } catch (Exception e) {
+            logger.warn("Could not update extraction index for {}: {}", folder.getName(), e.getMessage(), e);
+        }
+    }
+
+    /** Writes the values of the given rows as a new segment, then compacts if there are too many. */
+    public void append(File folder, Collection<PDFToExcelService.PDFResult> results, long extractedAt) throws IOException {
+        String folderPath = folder.getAbsolutePath();
+        List<Entry> entries = new ArrayList<>();
+        for (PDFToExcelService.PDFResult result : results) {
+            PDFData data = result.data;
+            if (data == null) {
+                continue;
+            }
+            String file = result.rowName();
+            addEntry(entries, Field.MID, data.getMerchantId(), extractedAt, folderPath, file);
+            addEntry(entries, Field.TID, data.getTerminalId(), extractedAt, folderPath, file);
+            if (data.getTerminalId00() != null && !data.getTerminalId00().equals(data.getTerminalId())) {
+                addEntry(entries, Field.TID00, data.getTerminalId00(), extractedAt, folderPath, file);
+            }
+            addEntry(entries, Field.SERIAL, data.getSerialNumber(), extractedAt, folderPath, file);
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        entries.sort(Entry::compareTo);
+
+        Files.createDirectories(dir);
+        synchronized (ExtractionIndex.class) {
+            // The file lock keeps other JVMs (GUI and CLI runs) from compacting underneath us
+            try (FileChannel lockChannel = FileChannel.open(dir.resolve("index.lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = lockChannel.lock()) {
+
+                Path segment = writeSegment(entries.iterator(), entries.size());
+                logger.info("Indexed {} values of {} into {}", entries.size(), folder.getName(), segment.getFileName());
+                compactIfNeeded();
+            }
+        }
+    }
+
+    /**
+     * All occurrences of a value in any indexed column, newest first.
+     * Whitespace in the value is ignored, as it is for the stored IDs.
+     */
+    public List<Hit> lookup(String value) throws IOException {
+        byte[] key = normalize(value).getBytes(StandardCharsets.UTF_8);
+        List<Hit> hits = new ArrayList<>();
+        if (key.length == 0) {
+            return hits;
+        }
+        // Inputs of a merge interrupted before they were marked would otherwise show up twice
+        Set<String> seen = new HashSet<>();
+        for (Path path : listSegments()) {
+            Segment segment;
+            try {
+                segment = Segment.open(path);
+            } catch (IOException e) {
+                // Removed by a concurrent compaction; its entries are in the merged segment
+                continue;
+            }
+            for (int i = segment.lowerBound(key); i < segment.count && segment.compareKey(i, key) == 0; i++) {
+                Entry entry = segment.entry(i);
+                if (seen.add(entry.field + "\t" + entry.folder + "\t" + entry.file + "\t" + entry.extractedAt)) {
+                    hits.add(new Hit(entry.field, entry.value(), entry.folder, entry.file, entry.extractedAt));
+                }
+            }
+        }
+        hits.sort(Comparator.comparingLong((Hit hit) -> hit.extractedAt).reversed());
+        return hits;
+    }
+
+    private static void addEntry(List<Entry> entries, Field field, String value, long extractedAt,
+                                 String folder, String file) {
+        if (value == null) {
+            return;
+        }
+        String key = normalize(value);
+        if (!key.isEmpty()) {
+            entries.add(new Entry(key.getBytes(StandardCharsets.UTF_8), field, extractedAt, folder, file));
+        }
+    }
+
+    private static String normalize(String value) {
+        return FieldNormalizer.stripWhitespace(value);
+    }
+
+    /** Live segments, oldest first: segments with a tombstone were already merged into another one. */
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                if (!Files.exists(tombstone(segment))) {
+                    segments.add(segment);
+                }
+            }
+        }
+        segments.sort(Comparator.naturalOrder());
+        return segments;
+    }
+
+    private static Path tombstone(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + TOMBSTONE_SUFFIX);
+    }
+
+    /** Merges segments tier by tier until no tier has {@link #MERGE_FACTOR} segments. Caller holds the lock. */
+    private void compactIfNeeded() throws IOException {
+        removeMergedSegments();
+        Set<Path> merged = new HashSet<>();
+        for (List<Path> batch = nextMergeBatch(); batch != null; batch = nextMergeBatch()) {
+            for (Path path : batch) {
+                if (!merged.add(path)) {
+                    // Its tombstone is gone; merging it again would only duplicate its entries
+                    logger.warn("Index segment {} was already merged, compaction stopped", path.getFileName());
+                    return;
+                }
+            }
+            merge(batch);
+        }
+    }
+
+    /** Deletes the segments left behind by earlier merges, now that nothing may map them any more. */
+    private void removeMergedSegments() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX + TOMBSTONE_SUFFIX)) {
+            for (Path tombstone : stream) {
+                String name = tombstone.getFileName().toString();
+                Path segment = tombstone.resolveSibling(name.substring(0, name.length() - TOMBSTONE_SUFFIX.length()));
+                try {
+                    deleteSegment(segment);
+                    Files.delete(tombstone);
+                } catch (IOException e) {
+                    logger.debug("Merged index segment {} still in use: {}", segment.getFileName(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Deletes a segment file; a separate method so that tests can make it fail like Windows does. */
+    void deleteSegment(Path segment) throws IOException {
+        Files.deleteIfExists(segment);
+    }
+
+    /** The oldest {@link #MERGE_FACTOR} segments of the smallest tier that has that many, or null. */
+    private List<Path> nextMergeBatch() throws IOException {
+        TreeMap<Integer, List<Path>> tiers = new TreeMap<>();
+        for (Path path : listSegments()) {
+            long size = Files.size(path);
+            if (size <= MAX_SEGMENT_BYTES / MERGE_FACTOR) {
+                tiers.computeIfAbsent(tier(size), t -> new ArrayList<>()).add(path);
+            }
+        }
+        for (List<Path> tier : tiers.values()) {
+            if (tier.size() >= MERGE_FACTOR) {
+                return tier.subList(0, MERGE_FACTOR);
+            }
+        }
+        return null;
+    }
+
+    /** Size tier of a segment: 0 below {@link #MIN_TIER_BYTES}, then one more per {@link #TIER_FACTOR}. */
+    static int tier(long segmentBytes) {
+        int tier = 0;
+        for (long bound = MIN_TIER_BYTES; segmentBytes >= bound; bound *= TIER_FACTOR) {
+            tier++;
+        }
+        return tier;
+    }
+
+    /**
+     * Merges segments into one with a k-way merge, reading the inputs sequentially so that no mapping
+     * of them is left to keep them from being deleted.
+     */
+    private void merge(List<Path> paths) throws IOException {
+        List<Cursor> cursors = new ArrayList<>();
+        Path target;
+        long count = 0;
+        try {
+            PriorityQueue<Cursor> queue = new PriorityQueue<>();
+            for (Path path : paths) {
+                Cursor cursor = new Cursor(path);
+                cursors.add(cursor);
+                count += cursor.remaining;
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+
+            Iterator<Entry> merged = new Iterator<Entry>() {
+                @Override
+                public boolean hasNext() {
+                    return !queue.isEmpty();
+                }
+
+                @Override
+                public Entry next() {
+                    Cursor cursor = queue.poll();
+                    Entry entry = cursor.current;
+                    try {
+                        if (cursor.advance()) {
+                            queue.add(cursor);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return entry;
+                }
+            };
+            try {
+                target = writeSegment(merged, Math.toIntExact(count));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+
+        for (Path path : paths) {
+            try {
+                deleteSegment(path);
+            } catch (IOException e) {
+                // Still mapped by a lookup (Windows); the tombstone hides it until a later compaction removes it.
+                // If even that fails, the exception ends the compaction rather than merging the segment again.
+                Files.write(tombstone(path), new byte[0]);
+                logger.warn("Could not remove merged index segment {} yet: {}", path.getFileName(), e.getMessage());
+            }
+        }
+        logger.info("Compacted {} index segments ({} values) into {}", paths.size(), count, target.getFileName());
+    }
+
+    /** Writes entries (already sorted) to a new segment; it only becomes visible once complete. */
+    private Path writeSegment(Iterator<Entry> entries, int count) throws IOException {
+        Path temp = Files.createTempFile(dir, SEGMENT_PREFIX, ".tmp");
+        try {
+            int[] offsets = new int[count];
+            long dataStart = HEADER_BYTES + 4L * count;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.position(dataStart);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+                long position = dataStart;
+                for (int i = 0; i < count; i++) {
+                    offsets[i] = Math.toIntExact(position);
+                    position += entries.next().writeTo(out);
+                }
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate((int) dataStart);
+                header.putInt(MAGIC).putInt(VERSION).putInt(count);
+                header.asIntBuffer().put(offsets);
+                header.position(0);
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(false);
+            }
+
+            Path target = nextSegmentPath();
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target);
+            }
+            return target;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path nextSegmentPath() {
+        long stamp = System.currentTimeMillis();
+        Path path;
+        do {
+            path = dir.resolve(String.format("%s%015d%s", SEGMENT_PREFIX, stamp++, SEGMENT_SUFFIX));
+        } while (Files.exists(path));
+        return path;
+    }
+
+    /** One indexed value, as held in memory while writing or merging segments. */
+    private static final class Entry implements Comparable<Entry> {
+        final byte[] key;
+        final Field field;
+        final long extractedAt;
+        final String folder;
+        final String file;
+
+        Entry(byte[] key, Field field, long extractedAt, String folder, String file) {
+            this.key = key;
+            this.field = field;
+            this.extractedAt = extractedAt;
+            this.folder = folder;
+            this.file = file;
+        }
+
+        String value() {
+            return new String(key, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Arrays.compareUnsigned(key, other.key);
+        }
+
+        static Entry readFrom(DataInputStream in) throws IOException {
+            byte[] key = new byte[in.readUnsignedShort()];
+            in.readFully(key);
+            Field field = Field.values()[in.readUnsignedByte()];
+            long extractedAt = in.readLong();
+            String folder = readString(in);
+            String file = readString(in);
+            return new Entry(key, field, extractedAt, folder, file);
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            byte[] bytes = new byte[in.readUnsignedShort()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** @return Number of bytes written */
+        int writeTo(DataOutputStream out) throws IOException {
+            byte[] folderBytes = folder.getBytes(StandardCharsets.UTF_8);
+            byte[] fileBytes = file.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(key.length);
+            out.write(key);
+            out.writeByte(field.ordinal());
+            out.writeLong(extractedAt);
+            out.writeShort(folderBytes.length);
+            out.write(folderBytes);
+            out.writeShort(fileBytes.length);
+            out.write(fileBytes);
+            return 2 + key.length + 1 + 8 + 2 + folderBytes.length + 2 + fileBytes.length;
+        }
+    }
+
+    /** Read-only mapping of one segment file. */
+    private static final class Segment {
+        final MappedByteBuffer buffer;
+        final int count;
+
+        private Segment(MappedByteBuffer buffer, int count) {
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        static Segment open(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    throw new IOException("Not an index segment: " + path.getFileName());
+                }
+                return new Segment(buffer, buffer.getInt(8));
+            }
+        }
+
+        int offset(int i) {
+            return buffer.getInt(HEADER_BYTES + 4 * i);
+        }
+
+        /** First entry whose value is not less than key. */
+        int lowerBound(byte[] key) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareKey(mid, key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /** Compares the value of entry i with key, byte by byte as unsigned. */
+        int compareKey(int i, byte[] key) {
+            int offset = offset(i);
+            int length = buffer.getShort(offset) & 0xFFFF;
+            int common = Math.min(length, key.length);
+            for (int b = 0; b < common; b++) {
+                int cmp = Integer.compare(buffer.get(offset + 2 + b) & 0xFF, key[b] & 0xFF);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return Integer.compare(length, key.length);
+        }
+
+        Entry entry(int i) {
+            int position = offset(i);
+            byte[] key = new byte[buffer.getShort(position) & 0xFFFF];
+            buffer.get(position + 2, key);
+            position += 2 + key.length;
+            Field field = Field.values()[buffer.get(position)];
+            long extractedAt = buffer.getLong(position + 1);
+            position += 9;
+            String folder = readString(position);
+            position += 2 + (buffer.getShort(position) & 0xFFFF);
+            String file = readString(position);
+            return new Entry(key, field, extractedAt, folder, file);
+        }
+
+        private String readString(int position) {
+            byte[] bytes = new byte[buffer.getShort(position) & 0xFFFF];
+            buffer.get(position + 2, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Position of the k-way merge in one segment, read sequentially: entries are written in value order,
+     * so the offset table can be skipped.
+     */
+    private static final class Cursor implements Comparable<Cursor>, Closeable {
+        final DataInputStream in;
+        int remaining;
+        Entry current;
+
+        Cursor(Path path) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not an index segment: " + path.getFileName());
+                }
+                remaining = in.readInt();
+                in.skipNBytes(4L * remaining);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            current = Entry.readFrom(in);
+            remaining--;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            return current.compareTo(other.current);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.omori.pdfconvertor;
+
+/**
+ * Character-level clean-up of matched field values.
+ * Every routine works directly on a range of the source text (usually a regex group), runs in a single
+ * pass and allocates at most the result string; when the range already is the result of a whole string
+ * no copy is made at all. Replaces the chains of {@code replace}/{@code replaceAll}/{@code split}/{@code trim}
+ * that used to run per field.
+ */
+final class FieldNormalizer {
+
+    // Per-thread scratch buffer so that building a result does not need a temporary char[]/StringBuilder
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[256]);
+
+    private FieldNormalizer() {
+    }
+
+    /** Same as {@code src.substring(start, end).trim()}. */
+    static String trim(String src, int start, int end) {
+        while (start < end && src.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && src.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return src.substring(start, end);
+    }
+
+    /**
+     * Removes every whitespace/control character (anything {@code <= ' '}), e.g. a TID or MID that
+     * PDFBox wrapped onto two lines: {@code "1239 56\n78"} becomes {@code "12395678"}.
+     */
+    static String stripWhitespace(String src, int start, int end) {
+        int firstSpace = start;
+        while (firstSpace < end && src.charAt(firstSpace) > ' ') {
+            firstSpace++;
+        }
+        if (firstSpace == end) {
+            return src.substring(start, end);
+        }
+
+        char[] buf = scratch(end - start);
+        int len = 0;
+        for (int i = start; i < end; i++) {
+            char c = src.charAt(i);
+            if (c > ' ') {
+                buf[len++] = c;
+            }
+        }
+        return new String(buf, 0, len);
+    }
+
+    static String stripWhitespace(String value) {
+        return stripWhitespace(value, 0, value.length());
+    }
+
+    /**
+     * Trims and collapses every run of regex whitespace ({@code \s}) into one space.
+     * Same result as {@code src.substring(start, end).trim().replaceAll("\\s+", " ").trim()}.
+     */
+    static String collapseWhitespace(String src, int start, int end) {
+        while (start < end && src.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && src.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        // Fast path: nothing to collapse
+        boolean clean = true;
+        for (int i = start; i < end && clean; i++) {
+            char c = src.charAt(i);
+            if (isRegexSpace(c) && (c != ' ' || isRegexSpace(src.charAt(i + 1)))) {
+                clean = false;
+            }
+        }
+        if (clean) {
+            return src.substring(start, end);
+        }
+
+        char[] buf = scratch(end - start);
+        int len = 0;
+        boolean inRun = false;
+        for (int i = start; i < end; i++) {
+            char c = src.charAt(i);
+            if (isRegexSpace(c)) {
+                if (!inRun) {
+                    buf[len++] = ' ';
+                    inRun = true;
+                }
+            } else {
+                buf[len++] = c;
+                inRun = false;
+            }
+        }
+        return new String(buf, 0, len);
+    }
+
+    static String collapseWhitespace(String value) {
+        return collapseWhitespace(value, 0, value.length());
+    }
+
+    /**
+     * Keeps the leading run of ASCII letters, digits and spaces, trimmed.
+     * Same result as {@code src.substring(start, end).trim().split("[^a-zA-Z0-9 ]+")[0].trim()},
+     * e.g. {@code "PAX A920 (Android)"} becomes {@code "PAX A920"}.
+     */
+    static String cutAtFirstNonAlphanumeric(String src, int start, int end) {
+        while (start < end && src.charAt(start) <= ' ') {
+            start++;
+        }
+        int cut = start;
+        while (cut < end && isAsciiAlphanumericOrSpace(src.charAt(cut))) {
+            cut++;
+        }
+        while (cut > start && src.charAt(cut - 1) == ' ') {
+            cut--;
+        }
+        return src.substring(start, cut);
+    }
+
+    static String cutAtFirstNonAlphanumeric(String value) {
+        return cutAtFirstNonAlphanumeric(value, 0, value.length());
+    }
+
+    /**
+     * TID 00 rule: digits "39" at positions 3-4 become "00", otherwise the TID is returned as is.
+     */
+    static String terminalId00(String tid) {
+        if (tid.length() < 4 || tid.charAt(2) != '3' || tid.charAt(3) != '9') {
+            return tid;
+        }
+        char[] buf = scratch(tid.length());
+        tid.getChars(0, tid.length(), buf, 0);
+        buf[2] = '0';
+        buf[3] = '0';
+        return new String(buf, 0, tid.length());
+    }
+
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isAsciiAlphanumericOrSpace(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == ' ';
+    }
+
+    private static char[] scratch(int minLength) {
+        char[] buf = SCRATCH.get();
+        if (buf.length < minLength) {
+            buf = new char[Math.max(minLength, buf.length * 2)];
+            SCRATCH.set(buf);
+        }
+        return buf;
+    }
+}
@@ -1,6 +1,9 @@
 package com.omori.pdfconvertor;
 
 import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
 import java.util.Scanner;
 
 public class HeadlessMain {
@@ -14,7 +17,29 @@ public class HeadlessMain {
     public static void main(String[] args) {
         HeadlessMain app = new HeadlessMain();
         
-        if (args.length > 0) {
+        if (args.length > 0 && "--shards".equals(args[0])) {
+            // Multi-process mode: --shards N <folder>
+            int shards = args.length == 3 ? parseShardCount(args[1]) : -1;
+            if (shards < 1) {
+                if (args.length == 3) {
+                    System.out.println("❌ Số tiến trình không hợp lệ: " + args[1] + " (cần số nguyên lớn hơn 0)");
+                }
+                System.out.println("Cách dùng: --shards <số tiến trình> <thư mục>");
+                System.exit(64);
+            }
+            app.processFolderSharded(args[2], shards);
+        } else if (args.length >= 2 && "--query".equals(args[0])) {
+            // Index lookup: which folder/file a MID, TID or serial came from
+            app.query(args[1]);
+        } else if (args.length >= 2 && "--reextract".equals(args[0])) {
+            // Re-apply the extraction rules to stored text: --reextract <folder>...
+            for (int i = 1; i < args.length; i++) {
+                app.reextractFolder(args[i]);
+            }
+        } else if (args.length >= 2 && "--update".equals(args[0])) {
+            // Incremental mode: only new/modified PDFs are re-extracted
+            app.updateFolder(args[1]);
+        } else if (args.length > 0) {
             // Command line mode
             app.processFolder(args[0]);
         } else {
@@ -23,6 +48,15 @@ public class HeadlessMain {
         }
     }
     
+    /** The shard count given on the command line, or -1 if it is not a whole number. */
+    private static int parseShardCount(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
     private void runInteractive() {
         Scanner scanner = new Scanner(System.in);
         
@@ -51,22 +85,38 @@ public class HeadlessMain {
     }
     
     private void processFolder(String folderPath) {
-        File folder = new File(folderPath);
-        
-        if (!folder.exists()) {
-            System.out.println("❌ Thư mục không tồn tại: " + folderPath);
+        File folder = resolveFolder(folderPath);
+        if (folder == null) {
             return;
         }
         
-        if (!folder.isDirectory()) {
-            System.out.println("❌ Đường dẫn không phải là thư mục: " + folderPath);
+        System.out.println("🔄 Bắt đầu xử lý thư mục: " + folder.getAbsolutePath());
+        
+        try {
+            String result = pdfToExcelService.convertFolderToExcel(folder, 
+                (processedCount) -> {
+                    System.out.println("   📄 Đã xử lý " + processedCount + " file PDF...");
+                }
+            );
+            
+            System.out.println("✅ " + result);
+            
+        } catch (Exception e) {
+            System.out.println("❌ Lỗi xử lý: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    private void processFolderSharded(String folderPath, int shards) {
+        File folder = resolveFolder(folderPath);
+        if (folder == null) {
             return;
         }
         
-        System.out.println("🔄 Bắt đầu xử lý thư mục: " + folder.getAbsolutePath());
+        System.out.println("🔄 Bắt đầu xử lý thư mục: " + folder.getAbsolutePath() + " (" + shards + " tiến trình)");
         
         try {
-            String result = pdfToExcelService.convertFolderToExcel(folder, 
+            String result = new ShardCoordinator(shards).convertFolderToExcel(folder,
                 (processedCount) -> {
                     System.out.println("   📄 Đã xử lý " + processedCount + " file PDF...");
                 }
@@ -79,4 +129,90 @@ public class HeadlessMain {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+    
+    private void updateFolder(String folderPath) {
+        File folder = resolveFolder(folderPath);
+        if (folder == null) {
+            return;
+        }
+        
+        System.out.println("🔄 Cập nhật thư mục: " + folder.getAbsolutePath());
+        
+        try {
+            String result = new WorkbookUpdater(pdfToExcelService).updateFolderExcel(folder,
+                (processedCount) -> {
+                    System.out.println("   📄 Đã xử lý " + processedCount + " file PDF thay đổi...");
+                }
+            );
+            
+            System.out.println("✅ " + result);
+            
+        } catch (Exception e) {
+            System.out.println("❌ Lỗi xử lý: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    private void reextractFolder(String folderPath) {
+        File folder = resolveFolder(folderPath);
+        if (folder == null) {
+            return;
+        }
+        
+        System.out.println("🔄 Trích xuất lại từ văn bản đã lưu: " + folder.getAbsolutePath());
+        
+        try {
+            String result = pdfToExcelService.reextractFolderToExcel(folder,
+                (processedCount) -> {
+                    System.out.println("   📄 Đã đọc lại " + processedCount + " file PDF...");
+                }
+            );
+            
+            System.out.println("✅ " + result);
+            
+        } catch (Exception e) {
+            System.out.println("❌ Lỗi xử lý: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    private void query(String value) {
+        System.out.println("🔎 Tìm kiếm: " + value);
+        
+        try {
+            long started = System.nanoTime();
+            List<ExtractionIndex.Hit> hits = ExtractionIndex.openDefault().lookup(value);
+            long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+            
+            if (hits.isEmpty()) {
+                System.out.println("❌ Không tìm thấy trong chỉ mục (" + elapsedMs + " ms)");
+                return;
+            }
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            for (ExtractionIndex.Hit hit : hits) {
+                System.out.printf("   %-6s | %s | %s | %s%n", hit.field.label,
+                        format.format(new Date(hit.extractedAt)), hit.folder, hit.file);
+            }
+            System.out.println("✅ Tìm thấy " + hits.size() + " kết quả (" + elapsedMs + " ms)");
+            
+        } catch (Exception e) {
+            System.out.println("❌ Lỗi tra cứu: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    private File resolveFolder(String folderPath) {
+        File folder = new File(folderPath);
+        
+        if (!folder.exists()) {
+            System.out.println("❌ Thư mục không tồn tại: " + folderPath);
+            return null;
+        }
+        
+        if (!folder.isDirectory()) {
+            System.out.println("❌ Đường dẫn không phải là thư mục: " + folderPath);
+            return null;
+        }
+        return folder;
+    }
+}
@@ -3,34 +3,92 @@ package com.omori.pdfconvertor;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PDFToExcelService {
     private static final Logger logger = LoggerFactory.getLogger(PDFToExcelService.class);
     
-    private static final String[] HEADERS = {
+    static final String[] HEADERS = {
         "Tên File", "Tên kinh doanh", "Địa chỉ", "Số serial", "Loại máy",
         "Mã máy", "Ghi chú", "MID", "TID", "TID 00"
     };
 
+    // -Dpdf.workers=N pins the PDF pool to N threads; unset or "auto" enables adaptive sizing
+    private static final String WORKERS_PROPERTY = "pdf.workers";
+
+    // Rows kept in memory by SXSSF before flushing to its temp file
+    private static final int ROW_WINDOW = 200;
+
+    // -Dpdf.textEngine=lite uses TextOnlyStripper instead of PDFTextStripper
+    static final String TEXT_ENGINE_PROPERTY = "pdf.textEngine";
+
+    // Custom document property holding the conversion time (ISO-8601 instant)
+    static final String CONVERTED_AT_PROPERTY = "PDF Convertor converted at";
+
+    // Larger files are stripped in page ranges of this size on separate worker tasks
+    private static final int PAGES_PER_TASK = 8;
+
+    // "report.pdf #3" = third merchant form of a consolidated PDF
+    private static final String RECORD_SEPARATOR = " #";
+
     // PDFTextStripper is not thread-safe, so we'll create instances as needed
-    
+
+    private final int fixedWorkers;
+    private final boolean liteTextEngine = "lite".equalsIgnoreCase(System.getProperty(TEXT_ENGINE_PROPERTY, "").trim());
+
+    // Optional per-file extraction time in nanoseconds, used by the load-test tool
+    private volatile LongConsumer fileLatencyListener;
+
     public PDFToExcelService() {
-        // Constructor simplified since we create PDFTextStripper instances per thread
+        this(parseWorkers(System.getProperty(WORKERS_PROPERTY)));
+    }
+
+    /**
+     * @param fixedWorkers Fixed PDF worker count, or 0 to adapt to measured throughput
+     */
+    public PDFToExcelService(int fixedWorkers) {
+        this.fixedWorkers = Math.max(0, fixedWorkers);
+    }
+
+    void setFileLatencyListener(LongConsumer fileLatencyListener) {
+        this.fileLatencyListener = fileLatencyListener;
+    }
+
+    private static int parseWorkers(String value) {
+        if (value == null || value.isBlank() || "auto".equalsIgnoreCase(value.trim())) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid {}={}, using adaptive parallelism", WORKERS_PROPERTY, value);
+            return 0;
+        }
     }
 
     /**
@@ -43,127 +101,494 @@ public class PDFToExcelService {
         if ( folder == null || !folder.exists() || !folder.isDirectory()) {
             return "Thư mục không hợp lệ" + (folder != null ? (": " + folder.getAbsolutePath()) : "");
         }
-        final Consumer<Integer> cb = (progressCallback != null ) ? progressCallback : i -> {};
 
+        long startedAt = System.currentTimeMillis();
+        File[] pdfFiles = listPdfFiles(folder);
+        if (pdfFiles.length == 0) {
+            return "Không tìm thấy file PDF trong thư mục: " + folder.getName();
+        }
+
+        String excelPath = excelPathFor(folder);
+        ConcurrentLinkedQueue<PDFResult> results = new ConcurrentLinkedQueue<>();
+
+        try (TextStore textStore = TextStore.enabled() ? TextStore.create(folder) : null) {
+            int processed = extractAll(pdfFiles, folder.getName(), results::offer,
+                    textStore != null ? storeText(textStore, pdfFiles) : null, progressCallback);
+            if (processed < pdfFiles.length) {
+                return String.format("Hết thời gian: đã xử lý %d/%d tệp.", processed, pdfFiles.length);
+            }
+
+            // Sort results by original file (and form) order
+            PDFResult[] sortedResults = results.stream()
+                .filter(result -> result.data != null)
+                .sorted(PDFResult::compareByPosition)
+                .toArray(PDFResult[]::new);
+
+            writeWorkbook(excelPath, Arrays.asList(sortedResults), startedAt);
+            if (textStore != null) {
+                textStore.commit();
+            }
+            ExtractionIndex.recordConversion(folder, Arrays.asList(sortedResults));
+
+            return String.format("Đã xử lý %d PDFs thành công trong thư mục: %s (song song)", 
+                                sortedResults.length, folder.getName());
+
+        } catch (Exception e) {
+            logger.error("Error in parallel PDF processing: {}", e.getMessage(), e);
+            return "Lỗi xử lý song song: " + e.getMessage();
+        }
+    }
+
+    /** PDF files of a folder in consistent processing order. */
+    static File[] listPdfFiles(File folder) {
         File[] pdfFiles = Optional.ofNullable(
             folder.listFiles((dir, name) -> name.toLowerCase().endsWith(".pdf"))
         ).orElse(new File[0]);
+        Arrays.sort(pdfFiles);
+        return pdfFiles;
+    }
 
-        if (pdfFiles.length == 0) {
-            return "Không tìm thấy file PDF trong thư mục: " + folder.getName();
-        }
+    static String excelPathFor(File folder) {
+        return folder.getAbsolutePath() + File.separator + folder.getName() + ".xlsx";
+    }
+
+    /** Text sink for {@link #extractAll} that adds each file's pages to the store. */
+    static BiConsumer<Integer, String[]> storeText(TextStore textStore, File[] pdfFiles) {
+        return (index, pageTexts) -> {
+            try {
+                textStore.put(pdfFiles[index], pageTexts);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
 
-        Arrays.sort(pdfFiles); // Consistent processing order
-        String excelPath = folder.getAbsolutePath() + File.separator + folder.getName() + ".xlsx";
+    /**
+     * Regenerates {@code {folder}.xlsx} by applying the current {@link RegexExtractor} rules to the text
+     * saved in the folder's {@link TextStore}, without opening the PDFs. PDFs that are missing from the
+     * store or whose length or modification time differs from the stored one are stripped again and added to it.
+     * @param folder Folder containing PDF files and a text store
+     * @param progressCallback Called every 5 PDFs that have to be stripped again
+     * @return Status message
+     */
+    public String reextractFolderToExcel(File folder, Consumer<Integer> progressCallback) {
+        if ( folder == null || !folder.exists() || !folder.isDirectory()) {
+            return "Thư mục không hợp lệ" + (folder != null ? (": " + folder.getAbsolutePath()) : "");
+        }
+        File storeFile = TextStore.storeFileFor(folder);
+        if (!storeFile.isFile()) {
+            return "Chưa có văn bản đã lưu cho thư mục: " + folder.getName() + " (chạy với -D" + TextStore.ENABLED_PROPERTY + "=on)";
+        }
 
-        // Use 4 threads for parallel PDF processing within the folder
-        ExecutorService pdfExecutor = Executors.newFixedThreadPool(4);
+        long startedAt = System.currentTimeMillis();
+        File[] pdfFiles = listPdfFiles(folder);
         ConcurrentLinkedQueue<PDFResult> results = new ConcurrentLinkedQueue<>();
-        AtomicInteger processedCount = new AtomicInteger(0);
-        
+
         try {
-            // Submit all PDF processing tasks
-            for (int i = 0; i < pdfFiles.length; i++) {
-                final File pdfFile = pdfFiles[i];
-                final int index = i; // For maintaining order
-                
-                pdfExecutor.submit(() -> {
+            List<Integer> missing = new ArrayList<>();
+            try (TextStore.Reader reader = new TextStore.Reader(storeFile)) {
+                long started = System.nanoTime();
+                List<Integer> stored = new ArrayList<>();
+                for (int i = 0; i < pdfFiles.length; i++) {
+                    (reader.isCurrent(pdfFiles[i]) ? stored : missing).add(i);
+                }
+
+                // Regex extraction is cheap next to stripping, so the stored files just use the common pool
+                stored.parallelStream().forEach(index -> {
+                    File pdfFile = pdfFiles[index];
                     try {
-                        PDFData data = extractDataFromPDF(pdfFile);
-                        if (data != null) {
-                            results.offer(new PDFResult(index, data, pdfFile.getName()));
-                        }
-                        
-                        int completed = processedCount.incrementAndGet();
-                        
-                        // Batch UI updates every 5 files for performance
-                        if (completed % 5 == 0 || completed == pdfFiles.length) {
-                            cb.accept(completed);
-                        }
-                        
+                        emitRecords(index, pdfFile.getName(), reader.pageTexts(pdfFile.getName()), results::offer);
                     } catch (Exception e) {
-                        logger.error("Error processing PDF: {}", pdfFile.getName(), e);
+                        logger.error("Error re-extracting stored text of {}", pdfFile.getName(), e);
+                        results.offer(new PDFResult(index, null, pdfFile.getName()));
                     }
                 });
+                logger.info("Re-extracted {} stored files of {} in {} ms", stored.size(), folder.getName(),
+                        (System.nanoTime() - started) / 1_000_000);
+            }
+
+            if (!missing.isEmpty()) {
+                logger.info("{}: {} PDFs not in the text store or changed since, stripping them again",
+                        folder.getName(), missing.size());
+                File[] missingFiles = missing.stream().map(i -> pdfFiles[i]).toArray(File[]::new);
+                int[] globalIndexes = missing.stream().mapToInt(Integer::intValue).toArray();
+                try (TextStore textStore = TextStore.create(folder)) {
+                    int processed = extractAll(missingFiles, folder.getName(),
+                            result -> results.offer(new PDFResult(globalIndexes[result.index], result.record,
+                                    result.recordCount, result.data, result.fileName)),
+                            storeText(textStore, missingFiles), progressCallback);
+                    if (processed < missingFiles.length) {
+                        return String.format("Hết thời gian: đã xử lý %d/%d tệp.", processed, missingFiles.length);
+                    }
+                    // Keep the still valid text of the other files; entries of deleted PDFs are dropped
+                    Set<String> current = new HashSet<>();
+                    for (File pdfFile : pdfFiles) {
+                        current.add(pdfFile.getName());
+                    }
+                    textStore.copyFrom(storeFile, current::contains);
+                    textStore.commit();
+                }
             }
-            
+
+            PDFResult[] sortedResults = results.stream()
+                .filter(result -> result.data != null)
+                .sorted(PDFResult::compareByPosition)
+                .toArray(PDFResult[]::new);
+
+            writeWorkbook(excelPathFor(folder), Arrays.asList(sortedResults), startedAt);
+            ExtractionIndex.recordConversion(folder, Arrays.asList(sortedResults));
+
+            return String.format("Đã trích xuất lại %d dòng từ văn bản đã lưu trong thư mục: %s (%d tệp đọc lại từ PDF)",
+                                sortedResults.length, folder.getName(), missing.size());
+
+        } catch (Exception e) {
+            logger.error("Error re-extracting {}: {}", folder.getName(), e.getMessage(), e);
+            return "Lỗi trích xuất lại: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Extracts every file on the PDF worker pool, handing each result to the sink as soon as it completes.
+     * Files with more than {@link #PAGES_PER_TASK} pages are stripped in page ranges on separate tasks;
+     * a consolidated PDF holding several merchant forms yields one result per form ({@link RecordSegmenter}).
+     * Results arrive in completion order; {@link PDFResult#index}/{@link PDFResult#record} give the
+     * position in {@code pdfFiles} and within the file, and {@link PDFResult#data} is null when nothing
+     * could be extracted.
+     * @return Number of files processed; less than {@code pdfFiles.length} on timeout
+     */
+    int extractAll(File[] pdfFiles, String label, Consumer<PDFResult> sink,
+                   Consumer<Integer> progressCallback) throws InterruptedException {
+        return extractAll(pdfFiles, label, sink, null, progressCallback);
+    }
+
+    /**
+     * Same as {@link #extractAll(File[], String, Consumer, Consumer)}, also handing the stripped page text
+     * of every readable file (by index in {@code pdfFiles}) to textSink before its results.
+     */
+    int extractAll(File[] pdfFiles, String label, Consumer<PDFResult> sink, BiConsumer<Integer, String[]> textSink,
+                   Consumer<Integer> progressCallback) throws InterruptedException {
+        final Consumer<Integer> cb = (progressCallback != null ) ? progressCallback : i -> {};
+
+        // Start at the core count (or the fixed override) and let the controller tune it
+        int initialWorkers = fixedWorkers > 0 ? fixedWorkers : Runtime.getRuntime().availableProcessors();
+        // Page ranges of started files run ahead of files not started yet (see PoolTask)
+        ThreadPoolExecutor pdfExecutor = new ThreadPoolExecutor(initialWorkers, initialWorkers,
+                30, TimeUnit.SECONDS, new PriorityBlockingQueue<>());
+        AtomicInteger processedCount = new AtomicInteger(0);
+        AdaptiveParallelismController parallelism = fixedWorkers > 0 ? null
+                : AdaptiveParallelismController.start(pdfExecutor, processedCount::get, label);
+        // Page-range tasks are submitted from inside running tasks, so completion is tracked per file
+        // instead of by shutting the pool down
+        CountDownLatch filesLeft = new CountDownLatch(pdfFiles.length);
+
+        try {
+            // Submit all PDF processing tasks
+            for (int i = 0; i < pdfFiles.length; i++) {
+                FileJob job = new FileJob(i, pdfFiles[i], pdfFiles.length, sink, textSink, cb, processedCount, filesLeft);
+                pdfExecutor.execute(new PoolTask(false, () -> startFile(job, pdfExecutor)));
+            }
+
             // Wait for all PDFs to be processed
-            pdfExecutor.shutdown();
             long waitSeconds = Math.max(60, pdfFiles.length * 4L);
-            boolean finished = pdfExecutor.awaitTermination(waitSeconds, TimeUnit.SECONDS);
-            if (!finished) {
+            if (!filesLeft.await(waitSeconds, TimeUnit.SECONDS)) {
                 pdfExecutor.shutdownNow();
-                return String.format("Hết thời gian: đã xử lý %d/%d tệp.",
-                        processedCount.get(), pdfFiles.length);
-            }
-
-            // Create Excel with results (sorted by original order)
-            try (Workbook workbook = new XSSFWorkbook()) {
-                Sheet sheet = workbook.createSheet("POS Data");
-                createHeaders(sheet);
-                
-                // Sort results by original file order
-                PDFResult[] sortedResults = results.stream()
-                    .sorted((a, b) -> Integer.compare(a.index, b.index))
-                    .toArray(PDFResult[]::new);
-                
-                int rowNum = 1;
-                for (PDFResult result : sortedResults) {
-                    writeDataRow(sheet, rowNum++, result.data, result.fileName);
-                }
+            }
+            pdfExecutor.shutdown();
+            return processedCount.get();
+        } finally {
+            if (parallelism != null) {
+                parallelism.close();
+            }
+            if (!pdfExecutor.isShutdown()) {
+                pdfExecutor.shutdownNow();
+            }
+        }
+    }
 
-                // Auto-size columns
-                for (int i = 0; i < HEADERS.length; i++) {
-                    sheet.autoSizeColumn(i);
-                }
+    /**
+     * Work item of the extraction pool. Page ranges of a file that is already open sort before files
+     * that have not started, so a long file finishes (and frees its page text) within a few tasks
+     * instead of after the whole folder queued ahead of it; otherwise tasks run in submission order.
+     * Queued with {@code execute}, since the {@code FutureTask} made by {@code submit} is not comparable.
+     */
+    private static final class PoolTask implements Runnable, Comparable<PoolTask> {
+        private static final AtomicLong SEQUENCE = new AtomicLong();
+
+        private final boolean pageRange;
+        private final long sequence = SEQUENCE.getAndIncrement();
+        private final Runnable body;
+
+        PoolTask(boolean pageRange, Runnable body) {
+            this.pageRange = pageRange;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            body.run();
+        }
+
+        @Override
+        public int compareTo(PoolTask other) {
+            if (pageRange != other.pageRange) {
+                return pageRange ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /** State of one file while its page ranges are being stripped. */
+    private static final class FileJob {
+        final int index;
+        final File pdfFile;
+        final int totalFiles;
+        final Consumer<PDFResult> sink;
+        final BiConsumer<Integer, String[]> textSink;
+        final Consumer<Integer> cb;
+        final AtomicInteger processedCount;
+        final CountDownLatch filesLeft;
+        long started;
+        String[] pageTexts;
+        AtomicInteger chunksLeft;
+        volatile boolean failed;
+
+        FileJob(int index, File pdfFile, int totalFiles, Consumer<PDFResult> sink,
+                BiConsumer<Integer, String[]> textSink, Consumer<Integer> cb,
+                AtomicInteger processedCount, CountDownLatch filesLeft) {
+            this.index = index;
+            this.pdfFile = pdfFile;
+            this.totalFiles = totalFiles;
+            this.sink = sink;
+            this.textSink = textSink;
+            this.cb = cb;
+            this.processedCount = processedCount;
+            this.filesLeft = filesLeft;
+        }
+    }
 
-                // Write Excel file
-                try (FileOutputStream outputStream = new FileOutputStream(excelPath)) {
-                    workbook.write(outputStream);
+    private void startFile(FileJob job, ThreadPoolExecutor pdfExecutor) {
+        // Latency covers the file's own work from its first task on, not its wait in the queue
+        job.started = System.nanoTime();
+        try (PDDocument document = PDDocument.load(job.pdfFile)) {
+            int pages = document.getNumberOfPages();
+            int chunks = Math.max(1, (pages + PAGES_PER_TASK - 1) / PAGES_PER_TASK);
+            job.pageTexts = new String[pages];
+            job.chunksLeft = new AtomicInteger(chunks);
+
+            // Remaining page ranges go to other workers, each with its own PDDocument (not thread-safe)
+            for (int chunk = 1; chunk < chunks; chunk++) {
+                final int firstPage = chunk * PAGES_PER_TASK;
+                pdfExecutor.execute(new PoolTask(true, () -> runChunk(job, firstPage)));
+            }
+            stripPages(document, job.pageTexts, 0, Math.min(pages, PAGES_PER_TASK));
+        } catch (Exception e) {
+            logger.error("Error reading PDF: {}", job.pdfFile.getName(), e);
+            job.failed = true;
+            if (job.chunksLeft == null) {
+                finishFile(job);
+                return;
+            }
+        }
+        chunkDone(job);
+    }
+
+    private void runChunk(FileJob job, int firstPage) {
+        if (!job.failed) {
+            try (PDDocument document = PDDocument.load(job.pdfFile)) {
+                stripPages(document, job.pageTexts, firstPage, Math.min(job.pageTexts.length, firstPage + PAGES_PER_TASK));
+            } catch (Exception e) {
+                logger.error("Error reading pages {}+ of PDF: {}", firstPage + 1, job.pdfFile.getName(), e);
+                job.failed = true;
+            }
+        }
+        chunkDone(job);
+    }
+
+    private void chunkDone(FileJob job) {
+        // The last page range to finish segments the file and emits its records
+        if (job.chunksLeft.decrementAndGet() == 0) {
+            finishFile(job);
+        }
+    }
+
+    private void finishFile(FileJob job) {
+        String fileName = job.pdfFile.getName();
+        try {
+            if (job.failed) {
+                job.sink.accept(new PDFResult(job.index, null, fileName));
+            } else {
+                if (job.textSink != null) {
+                    try {
+                        job.textSink.accept(job.index, job.pageTexts);
+                    } catch (UncheckedIOException e) {
+                        logger.error("Could not store text of {}: {}", fileName, e.getCause().getMessage());
+                    }
                 }
+                emitRecords(job.index, fileName, job.pageTexts, job.sink);
+            }
 
-                return String.format("Đã xử lý %d PDFs thành công trong thư mục: %s (song song)", 
-                                    sortedResults.length, folder.getName());
+            LongConsumer latencyListener = fileLatencyListener;
+            if (latencyListener != null) {
+                latencyListener.accept(System.nanoTime() - job.started);
             }
 
+            int completed = job.processedCount.incrementAndGet();
+
+            // Batch UI updates every 5 files for performance
+            if (completed % 5 == 0 || completed == job.totalFiles) {
+                job.cb.accept(completed);
+            }
         } catch (Exception e) {
-            logger.error("Error in parallel PDF processing: {}", e.getMessage(), e);
-            return "Lỗi xử lý song song: " + e.getMessage();
+            logger.error("Error processing PDF: {}", fileName, e);
         } finally {
-            if (!pdfExecutor.isShutdown()) {
-                pdfExecutor.shutdownNow();
+            job.pageTexts = null;
+            job.filesLeft.countDown();
+        }
+    }
+
+    /** Segments a file's pages into merchant forms and emits one result per form. */
+    private void emitRecords(int index, String fileName, String[] pageTexts, Consumer<PDFResult> sink) {
+        List<int[]> records = RecordSegmenter.segment(pageTexts);
+        if (records.size() > 1) {
+            logger.info("{}: {} merchant forms found", fileName, records.size());
+        }
+        for (int r = 0; r < records.size(); r++) {
+            PDFData data = extractData(RecordSegmenter.join(pageTexts, records.get(r)));
+            sink.accept(new PDFResult(index, r, records.size(), data, fileName));
+        }
+    }
+
+    /**
+     * Writes results (already in output order) to a new workbook. Rows are streamed through
+     * SXSSF so that very large merged folders do not have to fit in the heap.
+     * @param convertedAt Time the PDFs were listed, recorded for {@link WorkbookUpdater}
+     */
+    void writeWorkbook(String excelPath, List<PDFResult> sortedResults, long convertedAt) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        try {
+            recordConversionTime(workbook, convertedAt);
+            SXSSFSheet sheet = workbook.createSheet("POS Data");
+            sheet.trackAllColumnsForAutoSizing();
+            createHeaders(sheet);
+
+            int rowNum = 1;
+            for (PDFResult result : sortedResults) {
+                writeDataRow(sheet, rowNum++, result.data, result.rowName());
             }
+
+            // Auto-size columns
+            for (int i = 0; i < HEADERS.length; i++) {
+                sheet.autoSizeColumn(i);
+            }
+
+            // Write Excel file
+            try (FileOutputStream outputStream = new FileOutputStream(excelPath)) {
+                workbook.write(outputStream);
+            }
+        } finally {
+            workbook.dispose();
+            workbook.close();
         }
     }
     
+    /**
+     * Stores the conversion time as a custom document property. Excel keeps custom properties when it
+     * saves, so unlike the file's modification time it still tells which PDFs changed after the conversion.
+     */
+    static void recordConversionTime(SXSSFWorkbook workbook, long convertedAt) {
+        workbook.getXSSFWorkbook().getProperties().getCustomProperties()
+                .addProperty(CONVERTED_AT_PROPERTY, Instant.ofEpochMilli(convertedAt).toString());
+    }
+
     // Helper class to maintain order of results
-    private static class PDFResult {
+    static class PDFResult {
         final int index;
+        final int record;
+        final int recordCount;
         final PDFData data;
         final String fileName;
-        
+
         PDFResult(int index, PDFData data, String fileName) {
+            this(index, 0, 1, data, fileName);
+        }
+
+        PDFResult(int index, int record, int recordCount, PDFData data, String fileName) {
             this.index = index;
+            this.record = record;
+            this.recordCount = recordCount;
             this.data = data;
             this.fileName = fileName;
         }
+
+        /** Value of the file name column: the file name, with "#n" for forms of a consolidated PDF. */
+        String rowName() {
+            return recordCount > 1 ? fileName + RECORD_SEPARATOR + (record + 1) : fileName;
+        }
+
+        static int compareByPosition(PDFResult a, PDFResult b) {
+            int byFile = Integer.compare(a.index, b.index);
+            return byFile != 0 ? byFile : Integer.compare(a.record, b.record);
+        }
     }
 
-    private PDFData extractDataFromPDF(File pdfFile) {
-        try (PDDocument document = PDDocument.load(pdfFile)) {
-            // Create optimized PDFTextStripper per thread for thread safety
-            PDFTextStripper stripper = new PDFTextStripper();
-            stripper.setSortByPosition(false); // Faster text extraction
-            stripper.setSuppressDuplicateOverlappingText(true); // Remove duplicates
-            
-            String text = stripper.getText(document);
-            String extractedData = RegexExtractor.extractSpecificData(text);
-            
-            if (!extractedData.isEmpty()) {
-                return parseExtractedData(extractedData);
+    /** File name of a row name written by {@link PDFResult#rowName()}. */
+    static String baseFileName(String rowName) {
+        int separator = recordSeparator(rowName);
+        return separator > 0 ? rowName.substring(0, separator) : rowName;
+    }
+
+    /** Form index (0-based) of a row name written by {@link PDFResult#rowName()}, or -1 if the suffix is not valid. */
+    static int recordIndex(String rowName) {
+        int separator = recordSeparator(rowName);
+        if (separator < 0) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(rowName.substring(separator + RECORD_SEPARATOR.length())) - 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Position of the {@code " #n"} suffix of a multi-form row name, or -1 for a plain file name. */
+    private static int recordSeparator(String rowName) {
+        int separator = rowName.lastIndexOf(RECORD_SEPARATOR);
+        if (separator > 0) {
+            String suffix = rowName.substring(separator + RECORD_SEPARATOR.length());
+            if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+                return separator;
+            }
+        }
+        return -1;
+    }
+
+    /** Strips pages [firstPage, endPage) (0-based) one at a time into pageTexts. */
+    private void stripPages(PDDocument document, String[] pageTexts, int firstPage, int endPage) throws IOException {
+        if (liteTextEngine) {
+            // One engine per document, so font metrics are cached across its pages
+            TextOnlyStripper stripper = new TextOnlyStripper();
+            for (int page = firstPage; page < endPage; page++) {
+                pageTexts[page] = stripper.getText(document, page);
             }
-        } catch (IOException e) {
-            logger.error("Error reading PDF: {}", pdfFile.getName(), e);
+            return;
+        }
+
+        // Create optimized PDFTextStripper per thread for thread safety
+        PDFTextStripper stripper = new PDFTextStripper();
+        stripper.setSortByPosition(false); // Faster text extraction
+        stripper.setSuppressDuplicateOverlappingText(true); // Remove duplicates
+
+        for (int page = firstPage; page < endPage; page++) {
+            stripper.setStartPage(page + 1);
+            stripper.setEndPage(page + 1);
+            pageTexts[page] = stripper.getText(document);
+        }
+    }
+
+    private PDFData extractData(String text) {
+        String extractedData = RegexExtractor.extractSpecificData(text);
+        if (!extractedData.isEmpty()) {
+            return parseExtractedData(extractedData);
         }
         return null;
     }
@@ -200,7 +625,7 @@ public class PDFToExcelService {
         return data;
     }
 
-    private void createHeaders(Sheet sheet) {
+    void createHeaders(Sheet sheet) {
         Row headerRow = sheet.createRow(0);
         CellStyle headerStyle = sheet.getWorkbook().createCellStyle();
         Font headerFont = sheet.getWorkbook().createFont();
@@ -215,7 +640,7 @@ public class PDFToExcelService {
         }
     }
 
-    private void writeDataRow(Sheet sheet, int rowNum, PDFData data, String fileName) {
+    Row writeDataRow(Sheet sheet, int rowNum, PDFData data, String fileName) {
         Row row = sheet.createRow(rowNum);
         int colIndex = 0;
         
@@ -230,5 +655,6 @@ public class PDFToExcelService {
         row.createCell(colIndex++).setCellValue(data.getTerminalId());
         row.createCell(colIndex).setCellValue(data.getTerminalId00());
         // Removed: TID V-TOP and POS V-TOP columns
+        return row;
     }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package com.omori.pdfconvertor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits the pages of a consolidated PDF into one page range per merchant form.
+ * A page starts a new form when it contains an anchor label ({@link RegexExtractor#RECORD_ANCHORS})
+ * that the current form has already shown; a normal single-form PDF therefore stays one record.
+ */
+final class RecordSegmenter {
+
+    private RecordSegmenter() {
+    }
+
+    /**
+     * @param pageTexts Text of every page, in page order
+     * @return Page ranges as {@code {firstPage, endPageExclusive}} (0-based), at least one
+     */
+    static List<int[]> segment(String[] pageTexts) {
+        List<int[]> ranges = new ArrayList<>();
+        boolean[] seen = new boolean[RegexExtractor.RECORD_ANCHORS.length];
+        int recordStart = 0;
+
+        for (int page = 0; page < pageTexts.length; page++) {
+            String text = pageTexts[page] != null ? pageTexts[page] : "";
+            boolean repeats = false;
+            for (int a = 0; a < seen.length && !repeats; a++) {
+                repeats = seen[a] && text.contains(RegexExtractor.RECORD_ANCHORS[a]);
+            }
+            if (repeats && page > recordStart) {
+                ranges.add(new int[]{recordStart, page});
+                recordStart = page;
+                Arrays.fill(seen, false);
+            }
+            for (int a = 0; a < seen.length; a++) {
+                seen[a] |= text.contains(RegexExtractor.RECORD_ANCHORS[a]);
+            }
+        }
+        ranges.add(new int[]{recordStart, pageTexts.length});
+        return ranges;
+    }
+
+    /** Concatenated text of a page range, as PDFTextStripper would return it for those pages. */
+    static String join(String[] pageTexts, int[] range) {
+        if (range[1] - range[0] == 1) {
+            return pageTexts[range[0]] != null ? pageTexts[range[0]] : "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int page = range[0]; page < range[1]; page++) {
+            if (pageTexts[page] != null) {
+                sb.append(pageTexts[page]);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -25,6 +25,14 @@ public class RegexExtractor {
         PATTERNS.put("terminalId", Pattern.compile("TID\\s+VND\\s+([\\d\\s\\n]+)"));
     }
 
+    // Labels that appear once per merchant form; a page repeating one of them starts the next form
+    static final String[] RECORD_ANCHORS = {
+        "Tên pháp lý (Theo giấy phép kinh doanh)",
+        "Tên kinh doanh (",
+        "Địa chỉ lắp máy:",
+        "Số S/N của máy EDC:"
+    };
+
     public static String extractSpecificData(String text) {
         if (text == null || text.trim().isEmpty()) {
             logger.warn("Input text is null or empty");
@@ -53,56 +61,46 @@ public class RegexExtractor {
         // Group name
         Matcher groupMatcher = PATTERNS.get("groupName").matcher(text);
         if (groupMatcher.find()) {
-            String groupName = groupMatcher.group(1) != null ?
-                    groupMatcher.group(1).trim() :
-                    groupMatcher.group(2).trim();
-            data.setGroupName(groupName);
+            int group = groupMatcher.start(1) >= 0 ? 1 : 2;
+            data.setGroupName(FieldNormalizer.trim(text, groupMatcher.start(group), groupMatcher.end(group)));
         }
 
-        // Notes
-        extractPattern("notes", text).ifPresent(notes -> {
-            String cleanNotes = notes.trim();
-            if (cleanNotes.startsWith("Ngày") || cleanNotes.isEmpty()) {
-                data.setNotes("null");
-            } else {
-                // Preserve line breaks but clean up extra whitespace
-                String processedNotes = cleanNotes.replaceAll("\\s+", " ").trim();
-                data.setNotes(processedNotes);
-            }
-        });
+        // Notes: collapse line breaks and runs of whitespace into single spaces
+        Matcher notesMatcher = PATTERNS.get("notes").matcher(text);
+        if (notesMatcher.find()) {
+            String notes = FieldNormalizer.collapseWhitespace(text, notesMatcher.start(1), notesMatcher.end(1));
+            data.setNotes(notes.startsWith("Ngày") || notes.isEmpty() ? "null" : notes);
+        }
     }
 
     private static void extractDeviceData(String text, PDFData data) {
         // Serial number
         extractPattern("serialNumber", text).ifPresent(data::setSerialNumber);
-        // POS device
-        extractPattern("posDevice", text).ifPresent(device ->
-                data.setPosDevice(device.split("[^a-zA-Z0-9 ]+")[0].trim())
-        );
+        // POS device: model name up to the first symbol, e.g. "PAX A920 (Android)" -> "PAX A920"
+        Matcher deviceMatcher = PATTERNS.get("posDevice").matcher(text);
+        if (deviceMatcher.find()) {
+            data.setPosDevice(FieldNormalizer.cutAtFirstNonAlphanumeric(text, deviceMatcher.start(1), deviceMatcher.end(1)));
+        }
     }
 
     private static void extractIdentificationData(String text, PDFData data) {
-        // Merchant ID
-        extractPattern("merchantId", text)
-                .ifPresent(mid -> data.setMerchantId(mid.replace(" ", "").trim()));
+        // Merchant ID (may be wrapped over several lines)
+        Matcher midMatcher = PATTERNS.get("merchantId").matcher(text);
+        if (midMatcher.find()) {
+            data.setMerchantId(FieldNormalizer.stripWhitespace(text, midMatcher.start(1), midMatcher.end(1)));
+        }
 
         // Terminal ID and Terminal ID 00
-        extractPattern("terminalId", text).ifPresent(tid -> {
-            String cleanTid = tid.replace(" ", "").replace("\n", "").replace("\r", "").trim();
+        Matcher tidMatcher = PATTERNS.get("terminalId").matcher(text);
+        if (tidMatcher.find()) {
+            String cleanTid = FieldNormalizer.stripWhitespace(text, tidMatcher.start(1), tidMatcher.end(1));
             data.setTerminalId(cleanTid);
 
             // Generate Terminal ID 00: replace digits "39" at position 3 and 4 with "00", otherwise copy TID
-            if (cleanTid.length() >= 4 && cleanTid.substring(2, 4).equals("39")) {
-                // Replace positions 3-4 with "00"
-                String tid00 = cleanTid.substring(0, 2) + "00" + cleanTid.substring(4);
-                data.setTerminalId00(tid00);
-            } else {
-                // Keep original TID (either length < 4 OR positions 3-4 are not "39")
-                data.setTerminalId00(cleanTid);
-            }
+            data.setTerminalId00(FieldNormalizer.terminalId00(cleanTid));
 
             logger.debug("Generated TID00: {} from original TID: {}", data.getTerminalId00(), cleanTid);
-        });
+        }
 
         // If no TID found at all, set both to empty string to avoid null
         if (data.getTerminalId() == null) {
@@ -120,7 +118,7 @@ public class RegexExtractor {
 
         Matcher matcher = pattern.matcher(text);
         if (matcher.find()) {
-            return java.util.Optional.of(matcher.group(1).trim());
+            return java.util.Optional.of(FieldNormalizer.trim(text, matcher.start(1), matcher.end(1)));
         }
         return java.util.Optional.empty();
     }
@@ -0,0 +1,358 @@
+package com.omori.pdfconvertor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Splits a folder into shards and converts them in separate local worker JVMs ({@link ShardWorker}),
+ * so that GC and PDFBox's shared font/resource caches are not bottlenecked on a single process.
+ * Results stream back over loopback sockets and are merged in original file order into the usual
+ * {@code {folder}.xlsx}. A shard whose process dies is relaunched for the files it had not yet reported.
+ * <p>
+ * Each worker gets an equal share of the cores ({@code -Dpdf.workers=cores/N}) and of the default heap
+ * ({@code -XX:MaxRAMPercentage=25/N}), so N workers together size themselves like one process would.
+ * An explicit {@code -Dpdf.workers} is forwarded instead, and extra worker JVM options (e.g. {@code -Xmx1g})
+ * can be passed with {@code -Dpdf.shard.jvmArgs="..."}; a heap option there replaces the default share.
+ * The text store and text engine settings ({@code -Dpdf.textStore}, {@code -Dpdf.textEngine}) are passed on.
+ */
+public class ShardCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int ACCEPT_POLL_MS = 1000;
+    private static final String JVM_ARGS_PROPERTY = "pdf.shard.jvmArgs";
+    // Default MaxRAMPercentage of a single JVM, split between the workers
+    private static final double DEFAULT_HEAP_PERCENT = 25.0;
+
+    private final int shardCount;
+    private final PDFToExcelService pdfToExcelService;
+
+    public ShardCoordinator(int shardCount) {
+        this.shardCount = Math.max(1, shardCount);
+        this.pdfToExcelService = new PDFToExcelService();
+    }
+
+    /**
+     * Sharded equivalent of {@link PDFToExcelService#convertFolderToExcel(File, Consumer)}.
+     * @param folder Folder containing PDF files
+     * @param progressCallback Called every 5 PDFs reported back by the workers
+     * @return Status message
+     */
+    public String convertFolderToExcel(File folder, Consumer<Integer> progressCallback) {
+        if (folder == null || !folder.exists() || !folder.isDirectory()) {
+            return "Thư mục không hợp lệ" + (folder != null ? (": " + folder.getAbsolutePath()) : "");
+        }
+        final Consumer<Integer> cb = (progressCallback != null) ? progressCallback : i -> {};
+
+        long startedAt = System.currentTimeMillis();
+        File[] pdfFiles = PDFToExcelService.listPdfFiles(folder);
+        if (pdfFiles.length == 0) {
+            return "Không tìm thấy file PDF trong thư mục: " + folder.getName();
+        }
+
+        int shards = Math.min(shardCount, pdfFiles.length);
+        AtomicReferenceArray<PDFData[]> merged = new AtomicReferenceArray<>(pdfFiles.length);
+        boolean[] done = new boolean[pdfFiles.length];
+        AtomicInteger processedCount = new AtomicInteger(0);
+        AtomicBoolean workerFailed = new AtomicBoolean(false);
+        ExecutorService shardExecutor = Executors.newFixedThreadPool(shards);
+        Path workDir = null;
+
+        try (TextStore textStore = TextStore.enabled() ? TextStore.create(folder) : null) {
+            workDir = Files.createTempDirectory("pdf-shards-");
+            logger.info("Converting {} files in {} shards (work dir {})", pdfFiles.length, shards, workDir);
+
+            // Contiguous ranges keep each worker's file list in directory order
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int s = 0; s < shards; s++) {
+                int from = (int) ((long) pdfFiles.length * s / shards);
+                int to = (int) ((long) pdfFiles.length * (s + 1) / shards);
+                ShardRun run = new ShardRun(s, from, to, shards, pdfFiles, merged, done,
+                        processedCount, workerFailed, cb, workDir, textStore);
+                futures.add(shardExecutor.submit(run::call));
+            }
+
+            int failed = 0;
+            for (Future<Integer> future : futures) {
+                failed += future.get();
+            }
+
+            List<PDFToExcelService.PDFResult> sortedResults = new ArrayList<>();
+            for (int i = 0; i < pdfFiles.length; i++) {
+                PDFData[] records = merged.get(i);
+                for (int r = 0; records != null && r < records.length; r++) {
+                    if (records[r] != null) {
+                        sortedResults.add(new PDFToExcelService.PDFResult(
+                                i, r, records.length, records[r], pdfFiles[i].getName()));
+                    }
+                }
+            }
+            pdfToExcelService.writeWorkbook(PDFToExcelService.excelPathFor(folder), sortedResults, startedAt);
+            if (textStore != null) {
+                textStore.commit();
+            }
+            ExtractionIndex.recordConversion(folder, sortedResults);
+
+            if (failed > 0) {
+                return String.format("Đã xử lý %d PDFs trong thư mục: %s (%d shard), %d tệp lỗi sau %d lần thử",
+                        sortedResults.size(), folder.getName(), shards, failed, MAX_ATTEMPTS);
+            }
+            return String.format("Đã xử lý %d PDFs thành công trong thư mục: %s (%d shard)",
+                    sortedResults.size(), folder.getName(), shards);
+
+        } catch (Exception e) {
+            logger.error("Error in sharded PDF processing: {}", e.getMessage(), e);
+            return "Lỗi xử lý phân đoạn: " + e.getMessage();
+        } finally {
+            shardExecutor.shutdownNow();
+            // Keep worker logs around when something went wrong
+            if (!workerFailed.get()) {
+                deleteQuietly(workDir);
+            }
+        }
+    }
+
+    /** Runs one shard to completion, relaunching its worker for unreported files after a crash. */
+    private static class ShardRun {
+        private final int shardId;
+        private final int from;
+        private final int to;
+        private final int shards;
+        private final File[] pdfFiles;
+        private final AtomicReferenceArray<PDFData[]> merged;
+        private final boolean[] done;
+        private final AtomicInteger processedCount;
+        private final AtomicBoolean workerFailed;
+        private final Consumer<Integer> cb;
+        private final Path workDir;
+        private final TextStore textStore;
+
+        ShardRun(int shardId, int from, int to, int shards, File[] pdfFiles, AtomicReferenceArray<PDFData[]> merged,
+                 boolean[] done, AtomicInteger processedCount, AtomicBoolean workerFailed,
+                 Consumer<Integer> cb, Path workDir, TextStore textStore) {
+            this.shardId = shardId;
+            this.from = from;
+            this.to = to;
+            this.shards = shards;
+            this.pdfFiles = pdfFiles;
+            this.merged = merged;
+            this.done = done;
+            this.processedCount = processedCount;
+            this.workerFailed = workerFailed;
+            this.cb = cb;
+            this.workDir = workDir;
+            this.textStore = textStore;
+        }
+
+        /** @return Number of files still unprocessed after all attempts */
+        int call() throws IOException, InterruptedException {
+            List<Integer> pending = pendingIndexes();
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS && !pending.isEmpty(); attempt++) {
+                boolean clean = runAttempt(attempt, pending);
+                pending = pendingIndexes();
+                if (!pending.isEmpty()) {
+                    logger.warn("Shard {} attempt {} {}; {} files left", shardId, attempt,
+                            clean ? "ended early" : "crashed", pending.size());
+                }
+            }
+            for (int index : pending) {
+                logger.error("Shard {}: giving up on {}", shardId, pdfFiles[index].getName());
+            }
+            return pending.size();
+        }
+
+        private List<Integer> pendingIndexes() {
+            List<Integer> pending = new ArrayList<>();
+            // done[] entries of this shard are only written by this thread
+            for (int i = from; i < to; i++) {
+                if (!done[i]) {
+                    pending.add(i);
+                }
+            }
+            return pending;
+        }
+
+        private boolean runAttempt(int attempt, List<Integer> pending) throws IOException, InterruptedException {
+            Path listFile = workDir.resolve("shard-" + shardId + "-" + attempt + ".txt");
+            try (Writer writer = Files.newBufferedWriter(listFile, StandardCharsets.UTF_8)) {
+                for (int index : pending) {
+                    writer.write(index + "\t" + pdfFiles[index].getAbsolutePath() + "\n");
+                }
+            }
+            Path logFile = workDir.resolve("shard-" + shardId + "-" + attempt + ".log");
+
+            try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                server.setSoTimeout(ACCEPT_POLL_MS);
+                Process process = launchWorker(server.getLocalPort(), listFile, logFile);
+                boolean clean = false;
+                try (Socket socket = accept(server, process)) {
+                    if (socket != null) {
+                        clean = readResults(socket);
+                    }
+                } finally {
+                    if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                        process.destroyForcibly();
+                    }
+                }
+                int exit = process.waitFor();
+                if (!clean || exit != 0) {
+                    workerFailed.set(true);
+                }
+                if (exit != 0) {
+                    logger.warn("Shard {} worker exited with code {} (log: {})", shardId, exit, logFile);
+                }
+                return clean && exit == 0;
+            }
+        }
+
+        private Process launchWorker(int port, Path listFile, Path logFile) throws IOException {
+            String javaBin = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            List<String> command = new ArrayList<>();
+            command.add(javaBin);
+            command.add("-Dfile.encoding=UTF-8");
+            command.add("-Djava.awt.headless=true");
+            // Without a split, every worker would size its pool and heap for the whole machine
+            String workers = System.getProperty("pdf.workers");
+            if (workers == null) {
+                workers = String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / shards));
+            }
+            command.add("-Dpdf.workers=" + workers);
+            if (textStore != null) {
+                command.add("-D" + TextStore.ENABLED_PROPERTY + "=on");
+            }
+            String textEngine = System.getProperty(PDFToExcelService.TEXT_ENGINE_PROPERTY);
+            if (textEngine != null) {
+                command.add("-D" + PDFToExcelService.TEXT_ENGINE_PROPERTY + "=" + textEngine);
+            }
+            String jvmArgs = System.getProperty(JVM_ARGS_PROPERTY, "").trim();
+            if (!jvmArgs.matches(".*(-Xmx|MaxRAM|MaxHeapSize).*")) {
+                command.add(String.format(Locale.ROOT, "-XX:MaxRAMPercentage=%.2f", DEFAULT_HEAP_PERCENT / shards));
+            }
+            if (!jvmArgs.isEmpty()) {
+                command.addAll(List.of(jvmArgs.split("\\s+")));
+            }
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(ShardWorker.class.getName());
+            command.add(String.valueOf(port));
+            command.add(String.valueOf(shardId));
+            command.add(listFile.toString());
+
+            return new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(logFile.toFile())
+                    .start();
+        }
+
+        private Socket accept(ServerSocket server, Process process) throws IOException {
+            while (true) {
+                try {
+                    return server.accept();
+                } catch (SocketTimeoutException e) {
+                    if (!process.isAlive()) {
+                        return null;
+                    }
+                }
+            }
+        }
+
+        /** @return true when the worker sent its end marker */
+        private boolean readResults(Socket socket) {
+            // Forms of a file that is not complete yet; discarded if the worker dies mid-file
+            Map<Integer, PDFData[]> partial = new HashMap<>();
+            int[] received = new int[to - from];
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                while (true) {
+                    int index = in.readInt();
+                    if (index == ShardProtocol.END_OF_SHARD) {
+                        in.readInt(); // processed count, cross-checked through done[]
+                        return true;
+                    }
+                    if (index == ShardProtocol.PAGE_TEXT) {
+                        int textIndex = in.readInt();
+                        String[] pageTexts = ShardProtocol.readText(in);
+                        // A retried file sends its text again; the store keeps the first copy
+                        if (textStore != null && textIndex >= from && textIndex < to && !done[textIndex]) {
+                            storeText(pdfFiles[textIndex], pageTexts);
+                        }
+                        continue;
+                    }
+                    int record = in.readInt();
+                    int recordCount = in.readInt();
+                    PDFData data = in.readBoolean() ? ShardProtocol.readData(in) : null;
+                    if (index < from || index >= to || done[index]) {
+                        continue;
+                    }
+                    // A file is done once all of its merchant forms have arrived
+                    PDFData[] records = partial.computeIfAbsent(index, i -> new PDFData[recordCount]);
+                    records[record] = data;
+                    if (++received[index - from] < recordCount) {
+                        continue;
+                    }
+                    partial.remove(index);
+                    merged.set(index, records);
+                    done[index] = true;
+
+                    int completed = processedCount.incrementAndGet();
+                    if (completed % 5 == 0 || completed == pdfFiles.length) {
+                        cb.accept(completed);
+                    }
+                }
+            } catch (EOFException e) {
+                return false;
+            } catch (IOException e) {
+                logger.warn("Shard {}: connection lost: {}", shardId, e.getMessage());
+                return false;
+            }
+        }
+
+        private void storeText(File pdfFile, String[] pageTexts) {
+            try {
+                textStore.put(pdfFile, pageTexts);
+            } catch (IOException e) {
+                logger.error("Could not store text of {}: {}", pdfFile.getName(), e.getMessage());
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.warn("Could not delete shard work dir {}: {}", dir, e.getMessage());
+        }
+    }
+}
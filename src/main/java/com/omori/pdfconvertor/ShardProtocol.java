@@ -0,0 +1,106 @@
+package com.omori.pdfconvertor;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format between {@link ShardCoordinator} and {@link ShardWorker} over a loopback socket.
+ * <pre>
+ *   result:  int index (>= 0), int record, int recordCount, boolean hasData,
+ *            [11 nullable strings in PDFData field order]
+ *   text:    int -2, int index, int pageCount, [pageCount strings]   (only with a text store, before the results)
+ *   end:     int -1, int processedCount
+ * </pre>
+ * Strings are written as an int byte length (-1 for null) followed by UTF-8 bytes,
+ * so long notes are not limited to the 64KB of {@code writeUTF}.
+ */
+final class ShardProtocol {
+    static final int END_OF_SHARD = -1;
+    static final int PAGE_TEXT = -2;
+
+    private ShardProtocol() {
+    }
+
+    static void writeResult(DataOutputStream out, int index, int record, int recordCount, PDFData data) throws IOException {
+        out.writeInt(index);
+        out.writeInt(record);
+        out.writeInt(recordCount);
+        out.writeBoolean(data != null);
+        if (data == null) {
+            return;
+        }
+        writeString(out, data.getGroupName());
+        writeString(out, data.getBusinessName());
+        writeString(out, data.getAddress());
+        writeString(out, data.getSerialNumber());
+        writeString(out, data.getPosDevice());
+        writeString(out, data.getNotes());
+        writeString(out, data.getMerchantId());
+        writeString(out, data.getTerminalId());
+        writeString(out, data.getTerminalId00());
+        writeString(out, data.getTerminalVtopId());
+        writeString(out, data.getPosVtop());
+    }
+
+    static void writeText(DataOutputStream out, int index, String[] pageTexts) throws IOException {
+        out.writeInt(PAGE_TEXT);
+        out.writeInt(index);
+        out.writeInt(pageTexts.length);
+        for (String pageText : pageTexts) {
+            writeString(out, pageText);
+        }
+    }
+
+    /** Reads the pages of a text message whose marker and index were already consumed. */
+    static String[] readText(DataInputStream in) throws IOException {
+        String[] pageTexts = new String[in.readInt()];
+        for (int i = 0; i < pageTexts.length; i++) {
+            pageTexts[i] = readString(in);
+        }
+        return pageTexts;
+    }
+
+    static void writeEnd(DataOutputStream out, int processedCount) throws IOException {
+        out.writeInt(END_OF_SHARD);
+        out.writeInt(processedCount);
+    }
+
+    /** Reads the data part of a result whose index, record numbers and hasData flag were already consumed. */
+    static PDFData readData(DataInputStream in) throws IOException {
+        PDFData data = new PDFData();
+        data.setGroupName(readString(in));
+        data.setBusinessName(readString(in));
+        data.setAddress(readString(in));
+        data.setSerialNumber(readString(in));
+        data.setPosDevice(readString(in));
+        data.setNotes(readString(in));
+        data.setMerchantId(readString(in));
+        data.setTerminalId(readString(in));
+        data.setTerminalId00(readString(in));
+        data.setTerminalVtopId(readString(in));
+        data.setPosVtop(readString(in));
+        return data;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,87 @@
+package com.omori.pdfconvertor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Worker JVM launched by {@link ShardCoordinator}. Extracts one shard of a folder with the
+ * regular {@link PDFToExcelService} pool and streams results back over a loopback socket.
+ * <p>
+ * Usage: {@code ShardWorker <port> <shardId> <listFile>}, where every line of the list file is
+ * {@code <globalIndex>\t<absolutePath>}.
+ */
+public class ShardWorker {
+    private static final Logger logger = LoggerFactory.getLogger(ShardWorker.class);
+
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: ShardWorker <port> <shardId> <listFile>");
+            System.exit(64);
+        }
+        int exitCode;
+        try {
+            exitCode = run(Integer.parseInt(args[0]), args[1], args[2]);
+        } catch (Exception e) {
+            logger.error("Shard {} failed: {}", args[1], e.getMessage(), e);
+            exitCode = 1;
+        }
+        System.exit(exitCode);
+    }
+
+    private static int run(int port, String shardId, String listFile) throws Exception {
+        List<String> lines = Files.readAllLines(Paths.get(listFile), StandardCharsets.UTF_8);
+        int[] globalIndexes = new int[lines.size()];
+        File[] files = new File[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int tab = line.indexOf('\t');
+            globalIndexes[i] = Integer.parseInt(line.substring(0, tab));
+            files[i] = new File(line.substring(tab + 1));
+        }
+        logger.info("Shard {}: processing {} files", shardId, files.length);
+
+        PDFToExcelService service = new PDFToExcelService();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+            int processed = service.extractAll(files, "shard-" + shardId, result -> {
+                synchronized (out) {
+                    try {
+                        ShardProtocol.writeResult(out, globalIndexes[result.index],
+                                result.record, result.recordCount, result.data);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }, TextStore.enabled() ? (index, pageTexts) -> {
+                // The coordinator owns the folder's text store
+                synchronized (out) {
+                    try {
+                        ShardProtocol.writeText(out, globalIndexes[index], pageTexts);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            } : null, null);
+
+            synchronized (out) {
+                ShardProtocol.writeEnd(out, processed);
+                out.flush();
+            }
+            logger.info("Shard {}: done, {}/{} files", shardId, processed, files.length);
+            return processed == files.length ? 0 : 2;
+        }
+    }
+}
@@ -0,0 +1,750 @@
+package com.omori.pdfconvertor;
+
+import org.apache.poi.ooxml.POIXMLProperties;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaRenderer;
+import org.apache.poi.ss.formula.FormulaShifter;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.SheetVisibility;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.Comments;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.streaming.SXSSFEvaluationWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.apache.xmlbeans.XmlException;
+import org.openxmlformats.schemas.officeDocument.x2006.customProperties.CTProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Read side of update mode ({@link WorkbookUpdater}): streams every sheet of an existing workbook through
+ * the SAX event API, one row at a time, and copies rows into an SXSSF workbook with their cell types,
+ * formulas, styles and comments. Sheet names and visibility, column widths, hidden rows and columns,
+ * row heights, freeze panes, merged cells and auto filters are carried over as well. A formula on a row
+ * that ends up at another row number is adjusted the way Excel adjusts a copied row.
+ * <p>
+ * Anything that cannot be carried over row by row (conditional formatting, data validation, charts, ...)
+ * is listed by {@link #unsupportedFeatures()} after a first {@link #readSheets} pass, so that the caller
+ * can refuse the update instead of dropping it.
+ */
+final class StreamedWorkbook implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(StreamedWorkbook.class);
+
+    // Sheet parts this copy does not carry over, by element name
+    private static final Map<String, String> UNSUPPORTED_ELEMENTS = Map.of(
+            "conditionalFormatting", "định dạng có điều kiện",
+            "dataValidations", "quy tắc kiểm tra dữ liệu (Data Validation)",
+            "hyperlinks", "liên kết (hyperlink)",
+            "tableParts", "bảng (Table)",
+            "oleObjects", "đối tượng nhúng",
+            "controls", "điều khiển biểu mẫu",
+            "chartsheet", "trang biểu đồ");
+
+    private static final String DRAWING_FEATURE = "hình ảnh hoặc biểu đồ";
+    private static final String RELATIONSHIPS_NAMESPACE = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    // Defined name Excel creates for an auto filter, recreated by SXSSF
+    private static final String FILTER_DATABASE_NAME = "_xlnm._FilterDatabase";
+
+    /** One cell as stored in the sheet XML. */
+    static final class SourceCell {
+        final int col;
+        final int style;
+        CellType type = CellType.BLANK;
+        String value;
+        String formula;
+        // Cell the formula text was written for; differs from this cell for shared formulas
+        int formulaRow;
+        int formulaCol;
+
+        SourceCell(int col, int style) {
+            this.col = col;
+            this.style = style;
+        }
+    }
+
+    /** One row of a sheet, with the comments anchored on it. */
+    static final class SourceRow {
+        final int rowNum;
+        final List<SourceCell> cells = new ArrayList<>();
+        List<XSSFComment> comments = Collections.emptyList();
+        float height = -1;
+        boolean hidden;
+
+        SourceRow(int rowNum) {
+            this.rowNum = rowNum;
+        }
+
+        /** Text of a cell (cached value for formulas), or "" if the row has no such cell. */
+        String text(int col) {
+            for (SourceCell cell : cells) {
+                if (cell.col == col) {
+                    return cell.value != null ? cell.value : "";
+                }
+            }
+            return "";
+        }
+    }
+
+    /** Sheet-level layout, collected while the sheet is read. */
+    static final class SheetInfo {
+        final String name;
+        SheetVisibility visibility = SheetVisibility.VISIBLE;
+        final Map<Integer, Integer> columnWidths = new HashMap<>();
+        final Set<Integer> hiddenColumns = new TreeSet<>();
+        final List<String> mergedRegions = new ArrayList<>();
+        int freezeColumns;
+        int freezeRows;
+        String autoFilter;
+
+        SheetInfo(String name) {
+            this.name = name;
+        }
+
+        private void clear() {
+            columnWidths.clear();
+            hiddenColumns.clear();
+            mergedRegions.clear();
+            freezeColumns = 0;
+            freezeRows = 0;
+            autoFilter = null;
+        }
+    }
+
+    interface SheetVisitor {
+        void row(int sheetIndex, SourceRow row) throws IOException;
+    }
+
+    private final OPCPackage pkg;
+    private final XSSFReader reader;
+    private final ReadOnlySharedStringsTable strings;
+    private final StylesTable styles;
+    private final Map<String, SheetVisibility> visibilityByName = new HashMap<>();
+    private final List<SheetInfo> sheets = new ArrayList<>();
+    private final Set<String> unsupported = new LinkedHashSet<>();
+    private boolean closed;
+
+    private StreamedWorkbook(OPCPackage pkg) throws IOException, OpenXML4JException, SAXException,
+            ParserConfigurationException {
+        this.pkg = pkg;
+        this.reader = new XSSFReader(pkg);
+        this.strings = new ReadOnlySharedStringsTable(pkg);
+        this.styles = reader.getStylesTable();
+        readWorkbookPart();
+    }
+
+    static StreamedWorkbook open(File excelFile) throws IOException, OpenXML4JException, SAXException,
+            ParserConfigurationException {
+        OPCPackage pkg = OPCPackage.open(excelFile, PackageAccess.READ);
+        try {
+            return new StreamedWorkbook(pkg);
+        } catch (IOException | OpenXML4JException | SAXException | ParserConfigurationException | RuntimeException e) {
+            pkg.revert();
+            throw e;
+        }
+    }
+
+    /** Sheets in workbook order; complete after the first {@link #readSheets} pass. */
+    List<SheetInfo> sheets() {
+        return sheets;
+    }
+
+    /** Descriptions of workbook features update mode would lose; complete after the first {@link #readSheets} pass. */
+    Set<String> unsupportedFeatures() {
+        return unsupported;
+    }
+
+    /**
+     * Conversion time stored by {@link PDFToExcelService#recordConversionTime}, or -1 for workbooks
+     * written before it was recorded (or with an unreadable value).
+     */
+    long conversionTime() {
+        try {
+            CTProperty property = new POIXMLProperties(pkg).getCustomProperties()
+                    .getProperty(PDFToExcelService.CONVERTED_AT_PROPERTY);
+            return property != null && property.isSetLpwstr() ? Instant.parse(property.getLpwstr()).toEpochMilli() : -1;
+        } catch (IOException | OpenXML4JException | XmlException | DateTimeParseException e) {
+            logger.warn("Unreadable {} property: {}", PDFToExcelService.CONVERTED_AT_PROPERTY, e.getMessage());
+            return -1;
+        }
+    }
+
+    /** Streams all sheets in workbook order, row by row in ascending row order. */
+    void readSheets(SheetVisitor visitor) throws IOException, OpenXML4JException, SAXException,
+            ParserConfigurationException {
+        XSSFReader.SheetIterator iterator = (XSSFReader.SheetIterator) reader.getSheetsData();
+        for (int index = 0; iterator.hasNext(); index++) {
+            try (InputStream sheetData = iterator.next()) {
+                if (index == sheets.size()) {
+                    SheetInfo info = new SheetInfo(iterator.getSheetName());
+                    info.visibility = visibilityByName.getOrDefault(info.name, SheetVisibility.VISIBLE);
+                    sheets.add(info);
+                }
+                SheetInfo info = sheets.get(index);
+                info.clear();
+
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new SheetHandler(index, info, iterator.getSheetPart(),
+                        commentsByRow(iterator.getSheetComments()), visitor));
+                parser.parse(new InputSource(sheetData));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /** Starts a copy: creates the sheets with their layout in the target workbook. */
+    Copier copyInto(SXSSFWorkbook target) {
+        return new Copier(target);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            pkg.revert(); // read-only package, nothing to save
+        }
+    }
+
+    /** Sheet visibility and workbook-level features from workbook.xml. */
+    private void readWorkbookPart() throws IOException, OpenXML4JException, SAXException,
+            ParserConfigurationException {
+        XMLReader parser = XMLHelper.newXMLReader();
+        parser.setContentHandler(new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                switch (localName) {
+                    case "sheet":
+                        String state = attributes.getValue("state");
+                        if ("hidden".equals(state)) {
+                            visibilityByName.put(attributes.getValue("name"), SheetVisibility.HIDDEN);
+                        } else if ("veryHidden".equals(state)) {
+                            visibilityByName.put(attributes.getValue("name"), SheetVisibility.VERY_HIDDEN);
+                        }
+                        break;
+                    case "definedName":
+                        if (!FILTER_DATABASE_NAME.equals(attributes.getValue("name"))) {
+                            unsupported.add("tên vùng (Named range)");
+                        }
+                        break;
+                    case "workbookPr":
+                        String date1904 = attributes.getValue("date1904");
+                        if ("1".equals(date1904) || "true".equals(date1904)) {
+                            unsupported.add("hệ ngày 1904");
+                        }
+                        break;
+                    case "pivotCache":
+                        unsupported.add("PivotTable");
+                        break;
+                    case "externalReference":
+                        unsupported.add("liên kết tới tệp khác");
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+        try (InputStream workbookData = reader.getWorkbookData()) {
+            parser.parse(new InputSource(workbookData));
+        }
+    }
+
+    private static NavigableMap<Integer, List<XSSFComment>> commentsByRow(Comments comments) {
+        NavigableMap<Integer, List<XSSFComment>> byRow = new TreeMap<>();
+        if (comments == null) {
+            return byRow;
+        }
+        for (Iterator<CellAddress> addresses = comments.getCellAddresses(); addresses.hasNext(); ) {
+            CellAddress address = addresses.next();
+            byRow.computeIfAbsent(address.getRow(), row -> new ArrayList<>()).add(comments.findCellComment(address));
+        }
+        return byRow;
+    }
+
+    /** Turns the XML of one sheet into {@link SourceRow}s; rows that only carry comments are produced as well. */
+    private final class SheetHandler extends DefaultHandler {
+        private final int sheetIndex;
+        private final SheetInfo info;
+        private final PackagePart sheetPart;
+        private final NavigableMap<Integer, List<XSSFComment>> comments;
+        private final SheetVisitor visitor;
+        private final Map<String, SourceCell> sharedFormulas = new HashMap<>();
+        private final StringBuilder text = new StringBuilder();
+
+        private SourceRow row;
+        private SourceCell cell;
+        private String cellType;
+        private String sharedIndex;
+        private boolean capture;
+        private boolean inInlineString;
+        private int lastRow = -1;
+
+        SheetHandler(int sheetIndex, SheetInfo info, PackagePart sheetPart,
+                     NavigableMap<Integer, List<XSSFComment>> comments, SheetVisitor visitor) {
+            this.sheetIndex = sheetIndex;
+            this.info = info;
+            this.sheetPart = sheetPart;
+            this.comments = comments;
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            String feature = UNSUPPORTED_ELEMENTS.get(localName);
+            if (feature != null) {
+                unsupported.add(feature);
+            }
+            switch (localName) {
+                case "pane":
+                    String state = attributes.getValue("state");
+                    if (state != null && state.startsWith("frozen")) {
+                        info.freezeColumns = splitAt(attributes.getValue("xSplit"));
+                        info.freezeRows = splitAt(attributes.getValue("ySplit"));
+                    }
+                    break;
+                case "col":
+                    readColumn(attributes);
+                    break;
+                case "row":
+                    String r = attributes.getValue("r");
+                    int rowNum = r != null ? Integer.parseInt(r) - 1 : lastRow + 1;
+                    emitCommentRows(rowNum);
+                    row = new SourceRow(rowNum);
+                    String height = attributes.getValue("ht");
+                    if (height != null && isTrue(attributes.getValue("customHeight"))) {
+                        row.height = Float.parseFloat(height);
+                    }
+                    row.hidden = isTrue(attributes.getValue("hidden"));
+                    lastRow = rowNum;
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    int col = ref != null ? new CellReference(ref).getCol()
+                            : row.cells.isEmpty() ? 0 : row.cells.get(row.cells.size() - 1).col + 1;
+                    String style = attributes.getValue("s");
+                    cell = new SourceCell(col, style != null ? Integer.parseInt(style) : 0);
+                    cellType = attributes.getValue("t");
+                    sharedIndex = null;
+                    break;
+                case "v":
+                    startText();
+                    break;
+                case "f":
+                    startText();
+                    if ("shared".equals(attributes.getValue("t"))) {
+                        sharedIndex = attributes.getValue("si");
+                    }
+                    break;
+                case "is":
+                    inInlineString = true;
+                    text.setLength(0);
+                    break;
+                case "t":
+                    // Only the text runs of an inline string, not its phonetic hints
+                    capture = inInlineString;
+                    break;
+                case "rPh":
+                    inInlineString = false;
+                    break;
+                case "drawing":
+                    if (drawingHasShapes(attributes.getValue(RELATIONSHIPS_NAMESPACE, "id"))) {
+                        unsupported.add(DRAWING_FEATURE);
+                    }
+                    break;
+                case "mergeCell":
+                    info.mergedRegions.add(attributes.getValue("ref"));
+                    break;
+                case "autoFilter":
+                    info.autoFilter = attributes.getValue("ref");
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (capture) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                    cell.value = text.toString();
+                    capture = false;
+                    break;
+                case "f":
+                    endFormula();
+                    capture = false;
+                    break;
+                case "t":
+                    capture = false;
+                    break;
+                case "rPh":
+                    inInlineString = true;
+                    break;
+                case "is":
+                    cell.value = text.toString();
+                    inInlineString = false;
+                    break;
+                case "c":
+                    resolveValue();
+                    row.cells.add(cell);
+                    cell = null;
+                    break;
+                case "row":
+                    List<XSSFComment> rowComments = comments.remove(row.rowNum);
+                    if (rowComments != null) {
+                        row.comments = rowComments;
+                    }
+                    visit(row);
+                    row = null;
+                    break;
+                case "sheetData":
+                    emitCommentRows(Integer.MAX_VALUE);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void startText() {
+            text.setLength(0);
+            capture = true;
+        }
+
+        private void endFormula() {
+            if (text.length() > 0) {
+                cell.formula = text.toString();
+                cell.formulaRow = row.rowNum;
+                cell.formulaCol = cell.col;
+                if (sharedIndex != null) {
+                    sharedFormulas.put(sharedIndex, cell);
+                }
+            } else if (sharedIndex != null) {
+                // Other cells of a shared formula only name the group; the text is on its first cell
+                SourceCell master = sharedFormulas.get(sharedIndex);
+                if (master != null) {
+                    cell.formula = master.formula;
+                    cell.formulaRow = master.formulaRow;
+                    cell.formulaCol = master.formulaCol;
+                }
+            }
+        }
+
+        private void resolveValue() {
+            String raw = cell.value;
+            switch (cellType != null ? cellType : "n") {
+                case "s":
+                    cell.type = CellType.STRING;
+                    cell.value = raw != null ? strings.getItemAt(Integer.parseInt(raw)).getString() : "";
+                    break;
+                case "inlineStr":
+                case "str":
+                case "d":
+                    cell.type = CellType.STRING;
+                    cell.value = raw != null ? raw : "";
+                    break;
+                case "b":
+                    cell.type = CellType.BOOLEAN;
+                    break;
+                case "e":
+                    cell.type = CellType.ERROR;
+                    break;
+                default:
+                    cell.type = raw != null && !raw.isEmpty() ? CellType.NUMERIC : CellType.BLANK;
+                    break;
+            }
+        }
+
+        private void readColumn(Attributes attributes) {
+            String min = attributes.getValue("min");
+            String max = attributes.getValue("max");
+            if (min == null || max == null) {
+                return;
+            }
+            String width = attributes.getValue("width");
+            boolean hidden = isTrue(attributes.getValue("hidden"));
+            int last = Math.min(Integer.parseInt(max), SpreadsheetVersion.EXCEL2007.getMaxColumns());
+            if (hidden && last - Integer.parseInt(min) > 1024) {
+                // "Hide all columns to the right" spans to XFD; hiding them one by one is not worth it
+                last = Integer.parseInt(min) + 1024;
+            }
+            for (int col = Integer.parseInt(min) - 1; col < last; col++) {
+                if (width != null && col < 256) {
+                    info.columnWidths.put(col, (int) Math.min(255 * 256, Double.parseDouble(width) * 256));
+                }
+                if (hidden) {
+                    info.hiddenColumns.add(col);
+                }
+            }
+        }
+
+        /** Whether the sheet's DrawingML part holds pictures, charts or shapes; comments alone come with an empty one. */
+        private boolean drawingHasShapes(String relationshipId) {
+            try {
+                PackageRelationship relationship = relationshipId != null ? sheetPart.getRelationship(relationshipId) : null;
+                if (relationship == null) {
+                    return false;
+                }
+                boolean[] anchored = {false};
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new DefaultHandler() {
+                    @Override
+                    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                        anchored[0] |= localName.endsWith("Anchor");
+                    }
+                });
+                try (InputStream drawing = sheetPart.getRelatedPart(relationship).getInputStream()) {
+                    parser.parse(new InputSource(drawing));
+                }
+                return anchored[0];
+            } catch (IOException | OpenXML4JException | SAXException | ParserConfigurationException e) {
+                logger.warn("Could not read drawing {} of {}: {}", relationshipId, info.name, e.getMessage());
+                return true;
+            }
+        }
+
+        private void emitCommentRows(int beforeRow) throws SAXException {
+            while (!comments.isEmpty() && comments.firstKey() < beforeRow) {
+                Map.Entry<Integer, List<XSSFComment>> entry = comments.pollFirstEntry();
+                SourceRow commentRow = new SourceRow(entry.getKey());
+                commentRow.comments = entry.getValue();
+                visit(commentRow);
+            }
+        }
+
+        private void visit(SourceRow sourceRow) {
+            try {
+                visitor.row(sheetIndex, sourceRow);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static int splitAt(String value) {
+        return value != null ? (int) Double.parseDouble(value) : 0;
+    }
+
+    private static boolean isTrue(String value) {
+        return "1".equals(value) || "true".equals(value);
+    }
+
+    /** Writes rows read by {@link #readSheets} into the same sheets of an SXSSF workbook. */
+    final class Copier {
+        private final SXSSFWorkbook target;
+        private final SXSSFEvaluationWorkbook formulaWorkbook;
+        private final Map<Integer, CellStyle> styleMap = new HashMap<>();
+        private final Map<Integer, Drawing<?>> drawings = new HashMap<>();
+
+        private Copier(SXSSFWorkbook target) {
+            this.target = target;
+            // All sheets exist before any formula is parsed, so references between sheets resolve
+            for (SheetInfo info : sheets) {
+                SXSSFSheet sheet = target.createSheet(info.name);
+                info.columnWidths.forEach(sheet::setColumnWidth);
+                info.hiddenColumns.forEach(col -> sheet.setColumnHidden(col, true));
+                if (info.freezeColumns > 0 || info.freezeRows > 0) {
+                    sheet.createFreezePane(info.freezeColumns, info.freezeRows);
+                }
+                for (String region : info.mergedRegions) {
+                    sheet.addMergedRegionUnsafe(CellRangeAddress.valueOf(region));
+                }
+                if (info.autoFilter != null) {
+                    sheet.setAutoFilter(CellRangeAddress.valueOf(info.autoFilter));
+                }
+            }
+            for (int i = 0; i < sheets.size(); i++) {
+                // The first sheet stays the active one, so it cannot be hidden
+                if (i > 0 && sheets.get(i).visibility != SheetVisibility.VISIBLE) {
+                    target.setSheetVisibility(i, sheets.get(i).visibility);
+                }
+            }
+            this.formulaWorkbook = SXSSFEvaluationWorkbook.create(target);
+        }
+
+        /** Copies a row to the same row number of the same sheet. */
+        void copyRow(int sheetIndex, SourceRow source) {
+            copyRow(sheetIndex, source, target.getSheetAt(sheetIndex).createRow(source.rowNum), 0);
+        }
+
+        /**
+         * Copies a row onto a target row that may have another row number. Cells from fromColumn on are
+         * copied; cells before it are expected to be filled already and only take over the source style.
+         * Comments and the row height are always copied.
+         */
+        void copyRow(int sheetIndex, SourceRow source, Row row, int fromColumn) {
+            if (source.height >= 0) {
+                row.setHeightInPoints(source.height);
+            }
+            if (source.hidden) {
+                row.setZeroHeight(true);
+            }
+            for (SourceCell cell : source.cells) {
+                if (cell.col >= fromColumn) {
+                    copyCell(sheetIndex, cell, row);
+                } else if (cell.style > 0 && row.getCell(cell.col) != null) {
+                    applyStyle(row.getCell(cell.col), cell.style);
+                }
+            }
+            for (XSSFComment comment : source.comments) {
+                copyComment(sheetIndex, comment, row.getRowNum());
+            }
+        }
+
+        /** Extends the auto filter of a sheet, if it has one, down to lastRow. */
+        void extendAutoFilter(int sheetIndex, int lastRow) {
+            String filter = sheets.get(sheetIndex).autoFilter;
+            if (filter != null) {
+                CellRangeAddress range = CellRangeAddress.valueOf(filter);
+                target.getSheetAt(sheetIndex).setAutoFilter(new CellRangeAddress(range.getFirstRow(),
+                        Math.max(range.getFirstRow(), lastRow), range.getFirstColumn(), range.getLastColumn()));
+            }
+        }
+
+        private void copyCell(int sheetIndex, SourceCell source, Row row) {
+            Cell cell = row.createCell(source.col);
+            // The cached value goes first: setting a formula keeps the value as the formula's result
+            try {
+                switch (source.type) {
+                    case NUMERIC:
+                        cell.setCellValue(Double.parseDouble(source.value));
+                        break;
+                    case STRING:
+                        cell.setCellValue(source.value);
+                        break;
+                    case BOOLEAN:
+                        cell.setCellValue(isTrue(source.value));
+                        break;
+                    case ERROR:
+                        cell.setCellErrorValue(FormulaError.forString(source.value).getCode());
+                        break;
+                    default:
+                        break;
+                }
+            } catch (IllegalArgumentException e) {
+                cell.setCellValue(source.value);
+            }
+            if (source.formula != null) {
+                String formula = moveFormula(sheetIndex, source, row.getRowNum());
+                if (formula != null) {
+                    cell.setCellFormula(formula);
+                }
+            }
+            applyStyle(cell, source.style);
+        }
+
+        /**
+         * Formula text for the cell's new position: relative references move along with the row (and,
+         * for shared formulas, the column), absolute ones stay. Null if it cannot be parsed.
+         */
+        private String moveFormula(int sheetIndex, SourceCell source, int rowNum) {
+            int rowShift = rowNum - source.formulaRow;
+            int columnShift = source.col - source.formulaCol;
+            if (rowShift == 0 && columnShift == 0) {
+                return source.formula;
+            }
+            try {
+                Ptg[] ptgs = FormulaParser.parse(source.formula, formulaWorkbook, FormulaType.CELL, sheetIndex, rowNum);
+                String sheetName = target.getSheetName(sheetIndex);
+                if (rowShift != 0) {
+                    FormulaShifter.createForRowCopy(sheetIndex, sheetName, source.formulaRow, source.formulaRow,
+                            rowShift, SpreadsheetVersion.EXCEL2007).adjustFormula(ptgs, sheetIndex);
+                }
+                if (columnShift != 0) {
+                    FormulaShifter.createForColumnCopy(sheetIndex, sheetName, source.formulaCol, source.formulaCol,
+                            columnShift, SpreadsheetVersion.EXCEL2007).adjustFormula(ptgs, sheetIndex);
+                }
+                return FormulaRenderer.toFormulaString(formulaWorkbook, ptgs);
+            } catch (RuntimeException e) {
+                logger.warn("Could not move formula ={} to row {} of {}, keeping its last value: {}",
+                        source.formula, rowNum + 1, target.getSheetName(sheetIndex), e.getMessage());
+                return null;
+            }
+        }
+
+        private void applyStyle(Cell cell, int styleIndex) {
+            if (styleIndex <= 0) {
+                return;
+            }
+            CellStyle style = styleMap.computeIfAbsent(styleIndex, index -> {
+                XSSFCellStyle source = styles.getStyleAt(index);
+                if (source == null) {
+                    return null;
+                }
+                CellStyle copy = target.createCellStyle();
+                copy.cloneStyleFrom(source);
+                return copy;
+            });
+            if (style != null) {
+                cell.setCellStyle(style);
+            }
+        }
+
+        private void copyComment(int sheetIndex, XSSFComment source, int rowNum) {
+            Drawing<?> drawing = drawings.computeIfAbsent(sheetIndex,
+                    index -> target.getSheetAt(index).createDrawingPatriarch());
+            int col = source.getColumn();
+            ClientAnchor anchor = target.getCreationHelper().createClientAnchor();
+            anchor.setCol1(col + 1);
+            anchor.setCol2(col + 3);
+            anchor.setRow1(rowNum);
+            anchor.setRow2(rowNum + 3);
+            Comment comment = drawing.createCellComment(anchor);
+            comment.setString(target.getCreationHelper().createRichTextString(source.getString().getString()));
+            comment.setAuthor(source.getAuthor());
+            comment.setAddress(rowNum, col);
+        }
+    }
+}
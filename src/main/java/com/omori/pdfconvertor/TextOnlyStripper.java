@@ -0,0 +1,842 @@
+package com.omori.pdfconvertor;
+
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.fontbox.util.BoundingBox;
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.contentstream.operator.state.SetMatrix;
+import org.apache.pdfbox.contentstream.operator.text.BeginText;
+import org.apache.pdfbox.contentstream.operator.text.EndText;
+import org.apache.pdfbox.contentstream.operator.text.MoveText;
+import org.apache.pdfbox.contentstream.operator.text.MoveTextSetLeading;
+import org.apache.pdfbox.contentstream.operator.text.NextLine;
+import org.apache.pdfbox.contentstream.operator.text.SetCharSpacing;
+import org.apache.pdfbox.contentstream.operator.text.SetFontAndSize;
+import org.apache.pdfbox.contentstream.operator.text.SetTextHorizontalScaling;
+import org.apache.pdfbox.contentstream.operator.text.SetTextLeading;
+import org.apache.pdfbox.contentstream.operator.text.SetTextRenderingMode;
+import org.apache.pdfbox.contentstream.operator.text.SetTextRise;
+import org.apache.pdfbox.contentstream.operator.text.SetWordSpacing;
+import org.apache.pdfbox.contentstream.operator.text.ShowText;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextAdjusted;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextLine;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextLineAndSpace;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDCIDFontType2;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.pdmodel.font.PDSimpleFont;
+import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType3Font;
+import org.apache.pdfbox.pdmodel.font.encoding.GlyphList;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
+import org.apache.pdfbox.pdmodel.graphics.state.PDTextState;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Text-only page text extraction ({@code -Dpdf.textEngine=lite}), a lighter stand-in for
+ * {@link org.apache.pdfbox.text.PDFTextStripper} with {@code sortByPosition=false} and
+ * {@code suppressDuplicateOverlappingText=true}.
+ * <p>
+ * Only the text-showing/text-state operators and {@code q}/{@code Q}/{@code cm} are registered;
+ * {@code Do} only runs form XObjects, so image XObjects are recognised from their dictionary and never
+ * loaded or decoded, and inline images are skipped by the parser. Glyphs are positioned straight from
+ * the text and CTM matrices (multiplied out in the same float order as PDFBox) instead of cloning the
+ * graphics state and building a {@code TextPosition} per glyph, and widths, Unicode mappings and heights
+ * are cached per font for the whole document. Positions follow the crop box and {@code /Rotate} of the
+ * page, and lines, word spaces, dropped duplicate glyphs and accents drawn as separate glyphs (merged
+ * into the letter they overlap as a combining mark) follow the same rules as PDFTextStripper's
+ * {@code processTextPosition} and {@code writePage}. Not handled: article threads (beads) and the
+ * reordering of right-to-left words. Not thread-safe: one instance per document.
+ */
+final class TextOnlyStripper extends PDFStreamEngine {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    // PDFTextStripper defaults
+    private static final float SPACING_TOLERANCE = 0.5f;
+    private static final float AVERAGE_CHAR_TOLERANCE = 0.3f;
+    private static final int MAX_FORM_DEPTH = 25;
+    // Spacing accents that NFKC does not map to their combining mark (TextPosition's table)
+    private static final Map<Integer, String> COMBINING_FORMS = combiningForms();
+
+    private final Map<COSDictionary, FontMetrics> fontMetrics = new IdentityHashMap<>();
+    private final StringBuilder text = new StringBuilder(4096);
+    private int formDepth;
+
+    // Page geometry as TextPosition sees it: crop box size and origin, and /Rotate
+    private int rotation;
+    private float pageWidth;
+    private float pageHeight;
+    private float cropX;
+    private float cropY;
+    private boolean cropped;
+
+    // Glyphs shown on the page so far, for dropping overlapping duplicates: position, and the index of the
+    // previous glyph with the same text (-1: none)
+    private final Map<String, Integer> lastShown = new HashMap<>();
+    private float[] shownX = new float[512];
+    private float[] shownY = new float[512];
+    private int[] previousShown = new int[512];
+    private int shownCount;
+
+    // Last glyph, laid out only once the next one is known: an accent drawn as a separate glyph is merged
+    // into the letter it overlaps, whether it comes before or after it. The other instance is scratch
+    // space for the glyph being added, so nothing is allocated per glyph.
+    private Glyph held = new Glyph();
+    private Glyph next = new Glyph();
+    private boolean holding;
+
+    // PDFTextStripper.writePage state, kept for the whole page like there
+    private boolean laidOut;
+    private float lastX;
+    private String lastUnicode;
+    private PDFont lastFont;
+    private float lastFontSize;
+    private float maxYForLine;
+    private float maxHeightForLine;
+    private float endOfLastTextX;
+    private float lastWordSpacing;
+    private float previousAveCharWidth;
+
+    TextOnlyStripper() {
+        addOperator(new BeginText());
+        addOperator(new EndText());
+        addOperator(new SetFontAndSize());
+        addOperator(new SetCharSpacing());
+        addOperator(new SetWordSpacing());
+        addOperator(new SetTextHorizontalScaling());
+        addOperator(new SetTextLeading());
+        addOperator(new SetTextRise());
+        addOperator(new SetTextRenderingMode());
+        addOperator(new MoveText());
+        addOperator(new MoveTextSetLeading());
+        addOperator(new SetMatrix());
+        addOperator(new NextLine());
+        addOperator(new ShowText());
+        addOperator(new ShowTextAdjusted());
+        addOperator(new ShowTextLine());
+        addOperator(new ShowTextLineAndSpace());
+        addOperator(new Concatenate());
+        addOperator(new Save());
+        addOperator(new Restore());
+        addOperator(new DrawForm());
+    }
+
+    /**
+     * Text of one page (0-based), laid out like PDFTextStripper's output for that page.
+     */
+    String getText(PDDocument document, int pageIndex) throws IOException {
+        PDPage page = document.getPage(pageIndex);
+        startPage(page);
+        processPage(page);
+        if (holding) {
+            holding = false;
+            layoutGlyph(held);
+        }
+        text.append(LINE_SEPARATOR);
+        return text.toString();
+    }
+
+    private void startPage(PDPage page) {
+        text.setLength(0);
+        PDRectangle cropBox = page.getCropBox();
+        rotation = page.getRotation();
+        pageWidth = cropBox.getWidth();
+        pageHeight = cropBox.getHeight();
+        cropX = cropBox.getLowerLeftX();
+        cropY = cropBox.getLowerLeftY();
+        cropped = cropX != 0 || cropY != 0;
+
+        lastShown.clear();
+        shownCount = 0;
+        holding = false;
+
+        laidOut = false;
+        lastUnicode = null;
+        lastFont = null;
+        maxYForLine = -Float.MAX_VALUE;
+        maxHeightForLine = -1;
+        endOfLastTextX = -1;
+        lastWordSpacing = -1;
+        previousAveCharWidth = -1;
+    }
+
+    @Override
+    protected void showText(byte[] string) throws IOException {
+        PDGraphicsState state = getGraphicsState();
+        PDTextState textState = state.getTextState();
+        PDFont font = textState.getFont();
+        if (font == null || font.isVertical()) {
+            // Rare on our forms; the generic path calls showGlyph below
+            super.showText(string);
+            return;
+        }
+        FontMetrics metrics = metricsOf(font);
+
+        float fontSize = textState.getFontSize();
+        float horizontalScaling = textState.getHorizontalScaling() / 100f;
+        float charSpacing = textState.getCharacterSpacing();
+        float wordSpacing = textState.getWordSpacing();
+        float rise = textState.getRise();
+        Matrix ctm = state.getCurrentTransformationMatrix();
+        Matrix textMatrix = getTextMatrix();
+
+        // Text rendering matrix (font size and rise x text matrix x CTM), multiplied out in Matrix.multiply's
+        // float order so that positions are bit-identical to PDFBox's. Only the translation of the text
+        // matrix changes within the string.
+        float a = textMatrix.getScaleX();
+        float b = textMatrix.getShearY();
+        float c = textMatrix.getShearX();
+        float d = textMatrix.getScaleY();
+        float ctmA = ctm.getScaleX();
+        float ctmB = ctm.getShearY();
+        float ctmC = ctm.getShearX();
+        float ctmD = ctm.getScaleY();
+        float ctmE = ctm.getTranslateX();
+        float ctmF = ctm.getTranslateY();
+        float scaledSize = fontSize * horizontalScaling;
+        float parameterA = scaledSize * a;
+        float parameterB = scaledSize * b;
+        float parameterC = fontSize * c;
+        float parameterD = fontSize * d;
+        float trmA = parameterA * ctmA + parameterB * ctmC;
+        float trmB = parameterA * ctmB + parameterB * ctmD;
+        float trmC = parameterC * ctmA + parameterD * ctmC;
+        float trmD = parameterC * ctmB + parameterD * ctmD;
+
+        InputStream in = metrics.simple ? null : new ByteArrayInputStream(string);
+        int position = 0;
+        while (metrics.simple ? position < string.length : in.available() > 0) {
+            int code;
+            int codeLength;
+            if (metrics.simple) {
+                code = string[position++] & 0xFF;
+                codeLength = 1;
+            } else {
+                int before = in.available();
+                code = font.readCode(in);
+                codeLength = before - in.available();
+            }
+            float displacement = metrics.width(code);
+
+            String unicode = metrics.unicode(code);
+            if (unicode != null) {
+                float e = textMatrix.getTranslateX();
+                float f = textMatrix.getTranslateY();
+                float parameterE = rise * c + e;
+                float parameterF = rise * d + f;
+                float trmE = parameterE * ctmA + parameterF * ctmC + ctmE;
+                float trmF = parameterE * ctmB + parameterF * ctmD + ctmF;
+                // Where the glyph ends, without char and word spacing (LegacyPDFStreamEngine's width)
+                float advance = displacement * fontSize * horizontalScaling;
+                float endE = advance * a + e;
+                float endF = advance * b + f;
+                addGlyph(unicode, font, fontSize, metrics, trmA, trmB, trmC, trmD, trmE, trmF,
+                        endE * ctmA + endF * ctmC + ctmE, endE * ctmB + endF * ctmD + ctmF);
+            }
+
+            float spacing = codeLength == 1 && code == 32 ? wordSpacing : 0;
+            textMatrix.translate((displacement * fontSize + charSpacing + spacing) * horizontalScaling, 0);
+        }
+    }
+
+    /**
+     * Only reached through the generic {@link PDFStreamEngine#showText} fallback, which in PDFBox 2.0
+     * still calls this (deprecated) variant rather than the one without the unicode argument.
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code, String unicode,
+                             Vector displacement) throws IOException {
+        FontMetrics metrics = metricsOf(font);
+        String mapped = metrics.unicode(code);
+        if (mapped == null) {
+            return;
+        }
+        PDGraphicsState state = getGraphicsState();
+        float fontSize = state.getTextState().getFontSize();
+        float horizontalScaling = state.getTextState().getHorizontalScaling() / 100f;
+        float displacementX = font.isVertical() ? verticalGlyphWidth(font, code) : displacement.getX();
+        Matrix end = Matrix.getTranslateInstance(displacementX * fontSize * horizontalScaling,
+                        displacement.getY() * fontSize)
+                .multiply(getTextMatrix()).multiply(state.getCurrentTransformationMatrix());
+        addGlyph(mapped, font, fontSize, metrics,
+                textRenderingMatrix.getScaleX(), textRenderingMatrix.getShearY(),
+                textRenderingMatrix.getShearX(), textRenderingMatrix.getScaleY(),
+                textRenderingMatrix.getTranslateX(), textRenderingMatrix.getTranslateY(),
+                end.getTranslateX(), end.getTranslateY());
+    }
+
+    /** LegacyPDFStreamEngine's width of a vertical glyph: its horizontal advance, in text space. */
+    private static float verticalGlyphWidth(PDFont font, int code) throws IOException {
+        float width = font.getWidth(code) / 1000;
+        TrueTypeFont ttf = null;
+        if (font instanceof PDTrueTypeFont) {
+            ttf = ((PDTrueTypeFont) font).getTrueTypeFont();
+        } else if (font instanceof PDType0Font && ((PDType0Font) font).getDescendantFont() instanceof PDCIDFontType2) {
+            ttf = ((PDCIDFontType2) ((PDType0Font) font).getDescendantFont()).getTrueTypeFont();
+        }
+        if (ttf != null && ttf.getUnitsPerEm() != 1000) {
+            width *= 1000f / ttf.getUnitsPerEm();
+        }
+        return width;
+    }
+
+    /**
+     * Adds one glyph, given its text rendering matrix (a b c d e f) and where it ends (nextX, nextY) in
+     * device space. Like PDFTextStripper.processTextPosition, an overlapping duplicate of a glyph shown
+     * earlier on the page is dropped, and an accent overlapping the previous glyph (or overlapped by this
+     * one when it came first) is merged into that glyph instead of being laid out on its own.
+     */
+    private void addGlyph(String unicode, PDFont font, float fontSize, FontMetrics metrics,
+                          float trmA, float trmB, float trmC, float trmD, float trmE, float trmF,
+                          float nextX, float nextY) {
+        Glyph glyph = next;
+        glyph.unicode = unicode;
+        glyph.font = font;
+        glyph.fontSize = fontSize;
+        glyph.widths[0] = nextX - trmE;
+        glyph.charCount = 1;
+        glyph.height = Math.abs(metrics.height * scalingFactor(trmD, trmC));
+        glyph.spaceWidth = Math.abs(metrics.spaceWidth * scalingFactor(trmA, trmB));
+        if (cropped) {
+            trmE -= cropX;
+            trmF -= cropY;
+            nextX -= cropX;
+            nextY -= cropY;
+        }
+        glyph.x = xRot(rotation, trmE, trmF);
+        glyph.y = yRot(rotation, trmE, trmF);
+        glyph.width = widthRot(rotation, trmE, trmF, nextX, nextY);
+        int direction = direction(trmD, trmB, trmC, trmA);
+        glyph.dirX = xRot(direction, trmE, trmF);
+        glyph.dirY = yRot(direction, trmE, trmF);
+        glyph.dirWidth = widthRot(direction, trmE, trmF, nextX, nextY);
+
+        if (isShownDuplicate(glyph)) {
+            return;
+        }
+        recordShown(glyph);
+
+        if (holding) {
+            if (isDiacritic(unicode) && held.contains(glyph)) {
+                held.mergeDiacritic(glyph);
+                return;
+            }
+            if (!isDiacritic(held.unicode) || !glyph.contains(held)) {
+                layoutGlyph(held);
+            } else {
+                // The accent came first: this glyph takes its place, with the accent merged in
+                glyph.mergeDiacritic(held);
+            }
+        }
+        next = held;
+        held = glyph;
+        holding = true;
+    }
+
+    /** Matrix.getScalingFactorX/Y: the length of the row, or the scale alone when there is no shear. */
+    private static float scalingFactor(float scale, float shear) {
+        return shear != 0 ? (float) Math.sqrt(Math.pow(scale, 2) + Math.pow(shear, 2)) : scale;
+    }
+
+    /** TextPosition.getDir from the rendering matrix: 0, 90, 180 or 270 degrees. */
+    private static int direction(float a, float b, float c, float d) {
+        if (a > 0 && Math.abs(b) < d && Math.abs(c) < a && d > 0) {
+            return 0;
+        }
+        if (a < 0 && Math.abs(b) < Math.abs(d) && Math.abs(c) < Math.abs(a) && d < 0) {
+            return 180;
+        }
+        if (Math.abs(a) < Math.abs(c) && b > 0 && c < 0 && Math.abs(d) < b) {
+            return 90;
+        }
+        if (Math.abs(a) < c && b < 0 && c > 0 && Math.abs(d) < Math.abs(b)) {
+            return 270;
+        }
+        return 0;
+    }
+
+    /** TextPosition.getXRot: x of the glyph origin when the page is turned by {@code rotation}. */
+    private float xRot(int rotation, float x, float y) {
+        switch (rotation) {
+            case 0:
+                return x;
+            case 90:
+                return y;
+            case 180:
+                return pageWidth - x;
+            case 270:
+                return pageHeight - y;
+            default:
+                return 0;
+        }
+    }
+
+    /** TextPosition's y-down baseline when the page is turned by {@code rotation}. */
+    private float yRot(int rotation, float x, float y) {
+        float lowerLeftY;
+        switch (rotation) {
+            case 0:
+                lowerLeftY = y;
+                break;
+            case 90:
+                lowerLeftY = pageWidth - x;
+                break;
+            case 180:
+                lowerLeftY = pageHeight - y;
+                break;
+            case 270:
+                lowerLeftY = x;
+                break;
+            default:
+                lowerLeftY = 0;
+        }
+        return (rotation == 0 || rotation == 180 ? pageHeight : pageWidth) - lowerLeftY;
+    }
+
+    private static float widthRot(int rotation, float x, float y, float endX, float endY) {
+        return rotation == 90 || rotation == 270 ? Math.abs(endY - y) : Math.abs(endX - x);
+    }
+
+    /**
+     * Whether a glyph with the same text was already shown on the page within a third of this one's
+     * width, in the half-open ranges PDFTextStripper looks it up with.
+     */
+    private boolean isShownDuplicate(Glyph glyph) {
+        Integer last = lastShown.get(glyph.unicode);
+        if (last == null) {
+            return false;
+        }
+        float tolerance = glyph.width / glyph.unicode.length() / 3.0f;
+        float fromX = glyph.x - tolerance;
+        float toX = glyph.x + tolerance;
+        float fromY = glyph.y - tolerance;
+        float toY = glyph.y + tolerance;
+        for (int i = last; i >= 0; i = previousShown[i]) {
+            if (Float.compare(shownX[i], fromX) >= 0 && Float.compare(shownX[i], toX) < 0
+                    && Float.compare(shownY[i], fromY) >= 0 && Float.compare(shownY[i], toY) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void recordShown(Glyph glyph) {
+        if (shownCount == shownX.length) {
+            shownX = Arrays.copyOf(shownX, shownCount * 2);
+            shownY = Arrays.copyOf(shownY, shownCount * 2);
+            previousShown = Arrays.copyOf(previousShown, shownCount * 2);
+        }
+        shownX[shownCount] = glyph.x;
+        shownY[shownCount] = glyph.y;
+        Integer last = lastShown.put(glyph.unicode, shownCount);
+        previousShown[shownCount] = last != null ? last : -1;
+        shownCount++;
+    }
+
+    /** TextPosition.isDiacritic: a single non-spacing mark, modifier symbol or modifier letter. */
+    private static boolean isDiacritic(String unicode) {
+        if (unicode.length() != 1 || "\u30FC".equals(unicode)) {
+            // PDFBOX-3833: the prolonged sound mark is printed after its glyph, not over it
+            return false;
+        }
+        int type = Character.getType(unicode.charAt(0));
+        return type == Character.NON_SPACING_MARK || type == Character.MODIFIER_SYMBOL
+                || type == Character.MODIFIER_LETTER;
+    }
+
+    private static Map<Integer, String> combiningForms() {
+        Map<Integer, String> forms = new HashMap<>();
+        forms.put(0x0060, "\u0300");
+        forms.put(0x02CB, "\u0300");
+        forms.put(0x0027, "\u0301");
+        forms.put(0x02B9, "\u0301");
+        forms.put(0x02CA, "\u0301");
+        forms.put(0x005E, "\u0302");
+        forms.put(0x02C6, "\u0302");
+        forms.put(0x007E, "\u0303");
+        forms.put(0x02C9, "\u0304");
+        forms.put(0x00B0, "\u030A");
+        forms.put(0x02BA, "\u030B");
+        forms.put(0x02C7, "\u030C");
+        forms.put(0x02C8, "\u030D");
+        forms.put(0x0022, "\u030E");
+        forms.put(0x02BB, "\u0312");
+        forms.put(0x02BC, "\u0313");
+        forms.put(0x0486, "\u0313");
+        forms.put(0x055A, "\u0313");
+        forms.put(0x02BD, "\u0314");
+        forms.put(0x0485, "\u0314");
+        forms.put(0x0559, "\u0314");
+        forms.put(0x02D4, "\u031D");
+        forms.put(0x02D5, "\u031E");
+        forms.put(0x02D6, "\u031F");
+        forms.put(0x02D7, "\u0320");
+        forms.put(0x02B2, "\u0321");
+        forms.put(0x02CC, "\u0329");
+        forms.put(0x02B7, "\u032B");
+        forms.put(0x02CD, "\u0331");
+        forms.put(0x005F, "\u0332");
+        forms.put(0x204E, "\u0359");
+        return forms;
+    }
+
+    /**
+     * Writes one glyph (with any merged accents) to the text with PDFTextStripper.writePage's rules: a
+     * glyph whose baseline is outside the line's height starts a new line, a gap larger than the expected
+     * word spacing becomes a space, the average character width starts over on a font or size change, and
+     * the line height starts over after a jump of more than a space.
+     */
+    private void layoutGlyph(Glyph glyph) {
+        if (laidOut && (glyph.font != lastFont || glyph.fontSize != lastFontSize)) {
+            previousAveCharWidth = -1;
+        }
+        float wordSpacing = glyph.spaceWidth;
+        float deltaSpace;
+        if (wordSpacing == 0 || Float.isNaN(wordSpacing)) {
+            deltaSpace = Float.MAX_VALUE;
+        } else if (lastWordSpacing < 0) {
+            deltaSpace = wordSpacing * SPACING_TOLERANCE;
+        } else {
+            deltaSpace = (wordSpacing + lastWordSpacing) / 2f * SPACING_TOLERANCE;
+        }
+        float averageCharWidth = previousAveCharWidth < 0
+                ? glyph.width / glyph.charCount
+                : (previousAveCharWidth + glyph.width / glyph.charCount) / 2f;
+        float expectedStartOfNextWordX = endOfLastTextX != -1
+                ? endOfLastTextX + Math.min(deltaSpace, averageCharWidth * AVERAGE_CHAR_TOLERANCE)
+                : -Float.MAX_VALUE;
+
+        if (laidOut) {
+            if (!overlap(glyph.y, glyph.height, maxYForLine, maxHeightForLine)) {
+                text.append(LINE_SEPARATOR);
+                expectedStartOfNextWordX = -Float.MAX_VALUE;
+                maxYForLine = -Float.MAX_VALUE;
+                maxHeightForLine = -1;
+            }
+            if (expectedStartOfNextWordX != -Float.MAX_VALUE && expectedStartOfNextWordX < glyph.x
+                    && !lastUnicode.endsWith(" ")) {
+                text.append(' ');
+            }
+            if (Math.abs(glyph.x - lastX) > wordSpacing + deltaSpace) {
+                maxYForLine = -Float.MAX_VALUE;
+                maxHeightForLine = -1;
+            }
+        }
+        if (glyph.y >= maxYForLine) {
+            maxYForLine = glyph.y;
+        }
+        endOfLastTextX = glyph.x + glyph.width;
+        appendNormalized(glyph.unicode);
+
+        maxHeightForLine = Math.max(maxHeightForLine, glyph.height);
+        laidOut = true;
+        lastX = glyph.x;
+        lastUnicode = glyph.unicode;
+        lastFont = glyph.font;
+        lastFontSize = glyph.fontSize;
+        lastWordSpacing = wordSpacing;
+        previousAveCharWidth = averageCharWidth;
+    }
+
+    /**
+     * PDFTextStripper.normalizeWord: only ligatures and Hebrew/Arabic presentation forms are NFKC
+     * normalized, one character at a time (right-to-left text is not reordered here).
+     */
+    private void appendNormalized(String unicode) {
+        for (int i = 0; i < unicode.length(); i++) {
+            char c = unicode.charAt(i);
+            if ((c >= 0xFB00 && c <= 0xFDFF) || (c >= 0xFE70 && c <= 0xFEFF)) {
+                text.append(Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFKC).trim());
+            } else {
+                text.append(c);
+            }
+        }
+    }
+
+    /** PDFTextStripper's test: the baseline of one glyph lies within the height of the other. */
+    private static boolean overlap(float y1, float height1, float y2, float height2) {
+        return (y2 < y1 + .1f && y2 > y1 - .1f)
+                || (y2 <= y1 && y2 >= y1 - height1)
+                || (y1 <= y2 && y1 >= y2 - height2);
+    }
+
+    private FontMetrics metricsOf(PDFont font) throws IOException {
+        FontMetrics metrics = fontMetrics.get(font.getCOSObject());
+        if (metrics == null) {
+            metrics = new FontMetrics(font);
+            fontMetrics.put(font.getCOSObject(), metrics);
+        }
+        return metrics;
+    }
+
+    /** {@code Do} for form XObjects only; images are told apart by their Subtype without loading them. */
+    private final class DrawForm extends OperatorProcessor {
+        @Override
+        public void process(Operator operator, List<COSBase> operands) throws IOException {
+            if (operands.isEmpty() || !(operands.get(0) instanceof COSName) || formDepth >= MAX_FORM_DEPTH) {
+                return;
+            }
+            PDResources resources = getResources();
+            COSBase xobjects = resources != null ? resources.getCOSObject().getDictionaryObject(COSName.XOBJECT) : null;
+            if (!(xobjects instanceof COSDictionary)) {
+                return;
+            }
+            COSBase xobject = ((COSDictionary) xobjects).getDictionaryObject((COSName) operands.get(0));
+            if (xobject instanceof COSStream && COSName.FORM.equals(((COSStream) xobject).getCOSName(COSName.SUBTYPE))) {
+                formDepth++;
+                try {
+                    // The document's resource cache keeps fonts of repeated forms from being loaded again
+                    showForm(new PDFormXObject((COSStream) xobject, resources.getResourceCache()));
+                } finally {
+                    formDepth--;
+                }
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "Do";
+        }
+    }
+
+    /**
+     * The parts of a TextPosition that the duplicate check, accent merging and layout look at: position
+     * and width as the page is turned (x, y, width) and along the text direction (dirX, dirY, dirWidth),
+     * and TextPosition's individual widths, one per character including merged accents.
+     */
+    private static final class Glyph {
+        String unicode;
+        PDFont font;
+        float fontSize;
+        float x;
+        float y;
+        float width;
+        float height;
+        float spaceWidth;
+        float dirX;
+        float dirY;
+        float dirWidth;
+        float[] widths = new float[4];
+        int charCount;
+
+        /** TextPosition.contains: whether the other glyph lies within this one (more than 15% of its width). */
+        boolean contains(Glyph other) {
+            double start = dirX;
+            double end = start + dirWidth;
+            double otherStart = other.dirX;
+            double otherEnd = otherStart + other.dirWidth;
+            if (otherEnd <= start || otherStart >= end) {
+                return false;
+            }
+            double top = dirY;
+            double otherTop = other.dirY;
+            if (otherTop + other.height < top || otherTop > top + height) {
+                return false;
+            }
+            if (otherStart > start && otherEnd > end) {
+                return (end - otherStart) / dirWidth > .15;
+            }
+            if (otherStart < start && otherEnd < end) {
+                return (otherEnd - start) / dirWidth > .15;
+            }
+            return true;
+        }
+
+        /**
+         * TextPosition.mergeDiacritic: the accent's combining form goes after the character it overlaps
+         * most. An accent that cannot be placed (on a ligature) is dropped, as in PDFBox.
+         */
+        void mergeDiacritic(Glyph accent) {
+            float accentStart = accent.dirX;
+            float accentEnd = accentStart + accent.widths[0];
+            float charStart = dirX;
+            int length = unicode.length();
+            for (int i = 0; i < length && i < charCount; i++) {
+                float charEnd = charStart + widths[i];
+                if (accentStart < charStart && accentEnd <= charEnd && i > 0) {
+                    // Overlaps this and the previous character
+                    float overlapThis = (accentEnd - charStart) / widths[i];
+                    float overlapPrevious = (charStart - accentStart) / widths[i - 1];
+                    insertDiacritic(overlapThis >= overlapPrevious ? i : i - 1, accent.unicode);
+                    return;
+                }
+                if (accentStart < charStart || accentEnd <= charEnd || i == length - 1) {
+                    insertDiacritic(i, accent.unicode);
+                    return;
+                }
+                charStart = charEnd;
+            }
+        }
+
+        private void insertDiacritic(int i, String accent) {
+            String combining = COMBINING_FORMS.get(accent.codePointAt(0));
+            if (combining == null) {
+                combining = Normalizer.normalize(accent, Normalizer.Form.NFKC).trim();
+            }
+            unicode = unicode.substring(0, i + 1) + combining + unicode.substring(i + 1);
+
+            if (charCount == widths.length) {
+                widths = Arrays.copyOf(widths, charCount * 2);
+            }
+            System.arraycopy(widths, i + 1, widths, i + 2, charCount - i - 1);
+            widths[i + 1] = 0;
+            charCount++;
+        }
+    }
+
+    /** Per-font values PDFTextStripper recomputes for every glyph. */
+    private static final class FontMetrics {
+        final PDFont font;
+        final boolean simple;
+        final float spaceWidth;
+        final float height;
+        private final GlyphList glyphList;
+        private final float[] widths = new float[256];
+        private final String[] unicodes = new String[256];
+        private final boolean[] unicodeKnown = new boolean[256];
+        private Map<Integer, Float> otherWidths;
+        private Map<Integer, String> otherUnicodes;
+
+        FontMetrics(PDFont font) throws IOException {
+            this.font = font;
+            this.simple = font instanceof PDSimpleFont;
+            this.glyphList = font.getName() != null && font.getName().contains("ZapfDingbats")
+                    ? GlyphList.getZapfDingbats() : Glyphs.ADDITIONAL;
+            this.spaceWidth = computeSpaceWidth(font);
+            this.height = computeHeight(font);
+            Arrays.fill(widths, Float.NaN);
+        }
+
+        /** Horizontal displacement in text space units (per unit of font size). */
+        float width(int code) throws IOException {
+            if (code < 256) {
+                float width = widths[code];
+                if (Float.isNaN(width)) {
+                    width = font.getDisplacement(code).getX();
+                    widths[code] = width;
+                }
+                return width;
+            }
+            if (otherWidths == null) {
+                otherWidths = new HashMap<>();
+            }
+            Float width = otherWidths.get(code);
+            if (width == null) {
+                width = font.getDisplacement(code).getX();
+                otherWidths.put(code, width);
+            }
+            return width;
+        }
+
+        /** Same mapping as PDFTextStripper, or null for an unmapped composite font code (skipped). */
+        String unicode(int code) throws IOException {
+            if (code < 256) {
+                if (!unicodeKnown[code]) {
+                    unicodes[code] = mapUnicode(code);
+                    unicodeKnown[code] = true;
+                }
+                return unicodes[code];
+            }
+            if (otherUnicodes == null) {
+                otherUnicodes = new HashMap<>();
+            }
+            if (!otherUnicodes.containsKey(code)) {
+                otherUnicodes.put(code, mapUnicode(code));
+            }
+            return otherUnicodes.get(code);
+        }
+
+        private String mapUnicode(int code) throws IOException {
+            String unicode = font.toUnicode(code, glyphList);
+            if (unicode == null) {
+                if (!simple) {
+                    return null;
+                }
+                unicode = String.valueOf((char) code);
+            }
+            // Ligatures stay one character until written out, like TextPosition's unicode
+            return unicode;
+        }
+
+        private static float glyphToTextSpace(PDFont font, float value) {
+            return font instanceof PDType3Font ? value * font.getFontMatrix().getScaleX() : value / 1000;
+        }
+
+        private static float computeSpaceWidth(PDFont font) {
+            float spaceWidth = 0;
+            try {
+                spaceWidth = glyphToTextSpace(font, font.getSpaceWidth());
+            } catch (Exception e) {
+                // Same fallbacks as PDFTextStripper
+            }
+            if (spaceWidth == 0) {
+                spaceWidth = glyphToTextSpace(font, font.getAverageFontWidth()) * .80f;
+            }
+            return spaceWidth == 0 ? 1.0f : spaceWidth;
+        }
+
+        private static float computeHeight(PDFont font) throws IOException {
+            BoundingBox bbox = font.getBoundingBox();
+            float lowerLeftY = bbox.getLowerLeftY() < Short.MIN_VALUE
+                    ? -(bbox.getLowerLeftY() + 65536) : bbox.getLowerLeftY();
+            float glyphHeight = (bbox.getUpperRightY() - lowerLeftY) / 2;
+            PDFontDescriptor descriptor = font.getFontDescriptor();
+            if (descriptor != null) {
+                float capHeight = descriptor.getCapHeight();
+                if (capHeight != 0 && (capHeight < glyphHeight || glyphHeight == 0)) {
+                    glyphHeight = capHeight;
+                }
+                float ascent = descriptor.getAscent();
+                float descent = descriptor.getDescent();
+                if (capHeight > ascent && ascent > 0 && descent < 0
+                        && ((ascent - descent) / 2 < glyphHeight || glyphHeight == 0)) {
+                    glyphHeight = (ascent - descent) / 2;
+                }
+            }
+            // Type 3: the font matrix applied to the point (0, glyphHeight), translation included
+            return font instanceof PDType3Font
+                    ? glyphHeight * font.getFontMatrix().getScaleY() + font.getFontMatrix().getTranslateY()
+                    : glyphHeight / 1000;
+        }
+    }
+
+    /** Adobe glyph list plus PDFBox's additional names, as used by PDFTextStripper. */
+    private static final class Glyphs {
+        static final GlyphList ADDITIONAL = load();
+
+        private static GlyphList load() {
+            try (InputStream input = GlyphList.class.getResourceAsStream(
+                    "/org/apache/pdfbox/resources/glyphlist/additional.txt")) {
+                return input != null ? new GlyphList(GlyphList.getAdobeGlyphList(), input) : GlyphList.getAdobeGlyphList();
+            } catch (IOException e) {
+                return GlyphList.getAdobeGlyphList();
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.omori.pdfconvertor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Per-folder store of the stripped page text of every PDF, {@code {folder}/{folder}.text.zip},
+ * so that changed {@link RegexExtractor} rules can be re-applied without running PDFBox again.
+ * One DEFLATE entry per PDF, named after the file, holding its pages separated by {@code '\f'};
+ * the entry time is the PDF's modification time, written as a UTC extended timestamp so that it does
+ * not shift with the time zone or daylight saving time like the local DOS time of a plain entry.
+ * The entry comment holds the PDF's length in bytes.
+ * <p>
+ * Enabled with {@code -Dpdf.textStore=on}. A store is written next to a temp name and only
+ * replaces the previous one once the conversion succeeded.
+ */
+final class TextStore implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TextStore.class);
+
+    static final String ENABLED_PROPERTY = "pdf.textStore";
+    private static final char PAGE_SEPARATOR = '\f';
+    // Zip entry times are whole seconds (2 seconds for stores written with a DOS time only)
+    private static final long MTIME_RESOLUTION_MS = 2000;
+
+    private final Path target;
+    private final Path temp;
+    private final ZipOutputStream zip;
+    private final Set<String> names = new HashSet<>();
+    private boolean committed;
+
+    private TextStore(Path target) throws IOException {
+        this.target = target;
+        this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+        this.zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16),
+                StandardCharsets.UTF_8);
+        zip.setLevel(Deflater.BEST_SPEED);
+    }
+
+    static boolean enabled() {
+        String value = System.getProperty(ENABLED_PROPERTY, "off").trim();
+        return "on".equalsIgnoreCase(value) || "true".equalsIgnoreCase(value);
+    }
+
+    static File storeFileFor(File folder) {
+        return new File(folder, folder.getName() + ".text.zip");
+    }
+
+    /** Starts a new store for the folder; the existing one stays in place until {@link #commit()}. */
+    static TextStore create(File folder) throws IOException {
+        return new TextStore(storeFileFor(folder).toPath());
+    }
+
+    /** Adds the page text of a PDF. Thread-safe; a file that was already added (shard retry) is skipped. */
+    synchronized void put(File pdfFile, String[] pageTexts) throws IOException {
+        if (!names.add(pdfFile.getName())) {
+            return;
+        }
+        ZipEntry entry = new ZipEntry(pdfFile.getName());
+        entry.setLastModifiedTime(FileTime.fromMillis(pdfFile.lastModified()));
+        entry.setComment(String.valueOf(pdfFile.length()));
+        zip.putNextEntry(entry);
+        zip.write(String.join(String.valueOf(PAGE_SEPARATOR), nonNull(pageTexts)).getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    /** Copies the entries of an older store that the filter accepts and that were not added yet. */
+    void copyFrom(File oldStore, Predicate<String> keep) throws IOException {
+        if (!oldStore.isFile()) {
+            return;
+        }
+        try (Reader reader = new Reader(oldStore)) {
+            for (String name : reader.names()) {
+                if (!keep.test(name)) {
+                    continue;
+                }
+                synchronized (this) {
+                    if (!names.add(name)) {
+                        continue;
+                    }
+                    ZipEntry entry = new ZipEntry(name);
+                    entry.setLastModifiedTime(FileTime.fromMillis(reader.storedAt(name)));
+                    entry.setComment(reader.zip.getEntry(name).getComment());
+                    zip.putNextEntry(entry);
+                    try (InputStream in = reader.zip.getInputStream(reader.zip.getEntry(name))) {
+                        in.transferTo(zip);
+                    }
+                    zip.closeEntry();
+                }
+            }
+        }
+    }
+
+    /** Finishes the archive and moves it over the previous store. */
+    synchronized void commit() throws IOException {
+        zip.close();
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+        logger.info("Stored page text of {} PDFs in {}", names.size(), target.getFileName());
+    }
+
+    /** Discards the new store unless it was committed. */
+    @Override
+    public synchronized void close() {
+        if (committed) {
+            return;
+        }
+        try {
+            zip.close();
+        } catch (IOException e) {
+            // Discarded anyway
+        }
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", temp, e.getMessage());
+        }
+    }
+
+    private static String[] nonNull(String[] pageTexts) {
+        String[] texts = pageTexts.clone();
+        for (int i = 0; i < texts.length; i++) {
+            if (texts[i] == null) {
+                texts[i] = "";
+            }
+        }
+        return texts;
+    }
+
+    /** Read access to a stored folder; entries can be read from several threads. */
+    static final class Reader implements AutoCloseable {
+        private final ZipFile zip;
+
+        Reader(File store) throws IOException {
+            this.zip = new ZipFile(store, StandardCharsets.UTF_8);
+        }
+
+        /** Stored file names in the order {@link PDFToExcelService#listPdfFiles} uses. */
+        List<String> names() {
+            List<String> names = new ArrayList<>();
+            zip.stream().forEach(entry -> names.add(entry.getName()));
+            Collections.sort(names);
+            return names;
+        }
+
+        /** Modification time of the PDF when its text was stored, or -1 if it is not in the store. */
+        long storedAt(String name) {
+            ZipEntry entry = zip.getEntry(name);
+            FileTime storedAt = entry != null ? entry.getLastModifiedTime() : null;
+            return storedAt != null ? storedAt.toMillis() : -1;
+        }
+
+        /**
+         * Whether the stored text is still that of the PDF: same length, and a modification time within the
+         * entry time resolution in either direction, so that a PDF replaced by an older copy (restored from a
+         * backup, {@code cp -p}, unpacked from an archive) is read again too. Entries without a length
+         * (stores written by older versions) count as changed.
+         */
+        boolean isCurrent(File pdfFile) {
+            ZipEntry entry = zip.getEntry(pdfFile.getName());
+            if (entry == null || entry.getLastModifiedTime() == null
+                    || !String.valueOf(pdfFile.length()).equals(entry.getComment())) {
+                return false;
+            }
+            return Math.abs(pdfFile.lastModified() - entry.getLastModifiedTime().toMillis()) <= MTIME_RESOLUTION_MS;
+        }
+
+        String[] pageTexts(String name) throws IOException {
+            try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+                String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                return text.split(String.valueOf(PAGE_SEPARATOR), -1);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+}
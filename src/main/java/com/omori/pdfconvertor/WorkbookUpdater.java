@@ -0,0 +1,299 @@
+package com.omori.pdfconvertor;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Incremental update of an existing {@code {folder}.xlsx}.
+ * Only PDFs that are new or modified since the conversion recorded in the workbook are extracted again.
+ * The old workbook is read with the SAX event API and streamed row by row into an SXSSF copy
+ * ({@link StreamedWorkbook}), replacing rows matched by file name (or by TID for files that were renamed)
+ * and appending new ones. Consolidated PDFs with several merchant forms ({@code "file.pdf #n"} rows) are
+ * replaced form by form.
+ * <p>
+ * Manual annotations are kept: extra columns after the generated ones, cell types, formulas, styles and
+ * comments, and the other sheets of the workbook. A workbook with features that cannot be streamed
+ * (conditional formatting, charts, ...) is left untouched and the update is refused.
+ */
+public class WorkbookUpdater {
+    private static final Logger logger = LoggerFactory.getLogger(WorkbookUpdater.class);
+
+    private static final int FILE_NAME_COLUMN = 0;
+    private static final int HEADER_ROW = 0;
+    private static final int TID_COLUMN = 8;
+    private static final int ROW_WINDOW = 200;
+
+    // Some file systems (FAT) keep modification times in 2 second steps, which can date a PDF written
+    // just after the conversion read it to before the recorded conversion time
+    private static final long MTIME_RESOLUTION_MS = 2000;
+
+    private final PDFToExcelService pdfToExcelService;
+
+    public WorkbookUpdater(PDFToExcelService pdfToExcelService) {
+        this.pdfToExcelService = pdfToExcelService;
+    }
+
+    /**
+     * Upserts changed PDFs of a folder into its existing workbook, or does a full conversion if there is none.
+     * @param folder Folder containing PDF files
+     * @param progressCallback Called every 5 changed PDFs processed
+     * @return Status message
+     */
+    public String updateFolderExcel(File folder, Consumer<Integer> progressCallback) {
+        if (folder == null || !folder.exists() || !folder.isDirectory()) {
+            return "Thư mục không hợp lệ" + (folder != null ? (": " + folder.getAbsolutePath()) : "");
+        }
+        File excelFile = new File(PDFToExcelService.excelPathFor(folder));
+        if (!excelFile.isFile()) {
+            logger.info("No existing workbook for {}, running full conversion", folder.getName());
+            return pdfToExcelService.convertFolderToExcel(folder, progressCallback);
+        }
+
+        long startedAt = System.currentTimeMillis();
+        File[] pdfFiles = PDFToExcelService.listPdfFiles(folder);
+        Path target = excelFile.toPath();
+        Path temp = target.resolveSibling(excelFile.getName() + ".tmp");
+        try (StreamedWorkbook oldWorkbook = StreamedWorkbook.open(excelFile)) {
+            // Pass 1: generated rows of the data sheet, plus the layout and features of every sheet. The data sheet
+            // is the first one with our header (the user may have put other sheets in front of it), else the first
+            Map<Integer, OldRows> rowsBySheet = new HashMap<>();
+            int[] headerSheet = {-1};
+            oldWorkbook.readSheets((sheetIndex, row) -> {
+                String name = row.text(FILE_NAME_COLUMN);
+                if (row.rowNum == HEADER_ROW && headerSheet[0] < 0 && PDFToExcelService.HEADERS[0].equals(name)) {
+                    headerSheet[0] = sheetIndex;
+                } else if (row.rowNum > HEADER_ROW && (sheetIndex == headerSheet[0] || sheetIndex == 0)) {
+                    rowsBySheet.computeIfAbsent(sheetIndex, i -> new OldRows()).add(row.rowNum, name, row.text(TID_COLUMN));
+                }
+            });
+            int dataSheet = Math.max(0, headerSheet[0]);
+            OldRows oldRows = rowsBySheet.getOrDefault(dataSheet, new OldRows());
+            Set<String> existingNames = oldRows.lastRowByFile.keySet();
+
+            Set<String> unsupported = new LinkedHashSet<>(oldWorkbook.unsupportedFeatures());
+            if (!oldWorkbook.sheets().get(dataSheet).mergedRegions.isEmpty()) {
+                // Rows move on the data sheet, merged ranges would not move with them
+                unsupported.add("ô gộp trên trang dữ liệu");
+            }
+            if (!unsupported.isEmpty()) {
+                logger.warn("Not updating {}: it has {}", excelFile.getName(), unsupported);
+                return String.format("Không cập nhật %s: bảng tính có %s mà chế độ cập nhật không giữ được. "
+                        + "Hãy gỡ các mục này hoặc chạy chuyển đổi đầy đủ.", excelFile.getName(), String.join(", ", unsupported));
+            }
+
+            // Saving in Excel changes the file's modification time but keeps the recorded conversion time
+            long convertedAt = oldWorkbook.conversionTime();
+            if (convertedAt < 0) {
+                convertedAt = excelFile.lastModified();
+                logger.info("{} has no recorded conversion time, comparing with its modification time", excelFile.getName());
+            }
+            Set<String> currentNames = new HashSet<>();
+            List<File> changed = new ArrayList<>();
+            for (File pdfFile : pdfFiles) {
+                currentNames.add(pdfFile.getName());
+                if (pdfFile.lastModified() > convertedAt - MTIME_RESOLUTION_MS || !existingNames.contains(pdfFile.getName())) {
+                    changed.add(pdfFile);
+                }
+            }
+            if (changed.isEmpty()) {
+                return "Không có thay đổi trong thư mục: " + folder.getName();
+            }
+            logger.info("Updating {}: {} of {} PDFs changed", folder.getName(), changed.size(), pdfFiles.length);
+
+            try (TextStore textStore = TextStore.enabled() ? TextStore.create(folder) : null) {
+                File[] changedFiles = changed.toArray(new File[0]);
+                ConcurrentLinkedQueue<PDFToExcelService.PDFResult> results = new ConcurrentLinkedQueue<>();
+                int processed = pdfToExcelService.extractAll(changedFiles, folder.getName(), results::offer,
+                        textStore != null ? PDFToExcelService.storeText(textStore, changedFiles) : null, progressCallback);
+                if (processed < changedFiles.length) {
+                    return String.format("Hết thời gian: đã xử lý %d/%d tệp.", processed, changedFiles.length);
+                }
+
+                // Changed records per file, in file/form order
+                Map<String, List<PDFToExcelService.PDFResult>> byFile = new LinkedHashMap<>();
+                results.stream()
+                        .filter(result -> result.data != null)
+                        .sorted(PDFToExcelService.PDFResult::compareByPosition)
+                        .forEach(result -> byFile.computeIfAbsent(result.fileName, name -> new ArrayList<>()).add(result));
+
+                // A new file claims the rows of a file that is gone from the folder when their first forms share the TID
+                Map<String, String> nameByTid = new HashMap<>();
+                byFile.forEach((name, records) -> {
+                    String tid = records.get(0).data.getTerminalId();
+                    if (!existingNames.contains(name) && tid != null && !tid.isEmpty()) {
+                        nameByTid.putIfAbsent(tid, name);
+                    }
+                });
+                Map<String, String> renamedTo = new HashMap<>();
+                oldRows.firstTidByFile.forEach((oldName, tid) -> {
+                    String newName = nameByTid.get(tid);
+                    if (newName != null && !currentNames.contains(oldName) && !renamedTo.containsValue(newName)) {
+                        renamedTo.put(oldName, newName);
+                    }
+                });
+
+                int[] counts = merge(oldWorkbook, dataSheet, temp.toFile(), byFile, renamedTo, oldRows, startedAt);
+                // The old package is open for reading until here; release it before replacing the file
+                oldWorkbook.close();
+                replaceFile(temp, target);
+                if (textStore != null) {
+                    // Unchanged files keep their stored text
+                    textStore.copyFrom(TextStore.storeFileFor(folder), currentNames::contains);
+                    textStore.commit();
+                }
+                ExtractionIndex.recordConversion(folder, results);
+
+                return String.format("Đã cập nhật %d dòng, thêm %d dòng trong thư mục: %s",
+                        counts[0], counts[1], folder.getName());
+            }
+
+        } catch (Exception e) {
+            logger.error("Error updating workbook {}: {}", excelFile.getName(), e.getMessage(), e);
+            deleteQuietly(temp);
+            return "Lỗi cập nhật: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Pass 2: streams the old sheets into a new workbook, swapping in changed rows on the data sheet.
+     * An old row of a changed file takes the form named by its {@code #n} suffix (keeping that row's
+     * annotations) wherever the row is, so a sorted or filtered sheet keeps all of them. Forms without an
+     * old row follow the file's last old row (new files go at the end); rows of forms that no longer
+     * exist are dropped. Other sheets are copied as they are.
+     * @param renamedTo New file taking over the rows of a file that is gone from the folder
+     * @return {replaced, appended}
+     */
+    private int[] merge(StreamedWorkbook oldWorkbook, int dataSheet, File output,
+                        Map<String, List<PDFToExcelService.PDFResult>> byFile, Map<String, String> renamedTo,
+                        OldRows oldRows, long convertedAt) throws Exception {
+        int[] counts = new int[2];
+        int[] nextRow = {HEADER_ROW + 1};
+        Map<String, BitSet> placed = new HashMap<>();
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        try {
+            PDFToExcelService.recordConversionTime(workbook, convertedAt);
+            StreamedWorkbook.Copier copier = oldWorkbook.copyInto(workbook);
+            SXSSFSheet sheet = workbook.getSheetAt(dataSheet);
+
+            // Writes the forms of a file not placed on an old row
+            Consumer<String> flush = name -> {
+                List<PDFToExcelService.PDFResult> records = byFile.get(name);
+                BitSet done = placed.computeIfAbsent(name, key -> new BitSet());
+                for (int form = done.nextClearBit(0); form < records.size(); form = done.nextClearBit(form + 1)) {
+                    PDFToExcelService.PDFResult record = records.get(form);
+                    pdfToExcelService.writeDataRow(sheet, nextRow[0]++, record.data, record.rowName());
+                    counts[1]++;
+                }
+                done.set(0, records.size());
+            };
+
+            oldWorkbook.readSheets((sheetIndex, source) -> {
+                if (sheetIndex != dataSheet) {
+                    copier.copyRow(sheetIndex, source);
+                    return;
+                }
+                if (source.rowNum < HEADER_ROW) {
+                    return;
+                }
+                if (source.rowNum == HEADER_ROW) {
+                    pdfToExcelService.createHeaders(sheet);
+                    copier.copyRow(sheetIndex, source, sheet.getRow(HEADER_ROW), PDFToExcelService.HEADERS.length);
+                    return;
+                }
+
+                String rowName = source.text(FILE_NAME_COLUMN);
+                String name = PDFToExcelService.baseFileName(rowName);
+                String key = byFile.containsKey(name) ? name : renamedTo.get(name);
+                if (key == null) {
+                    copier.copyRow(sheetIndex, source, sheet.createRow(nextRow[0]++), 0);
+                    return;
+                }
+
+                List<PDFToExcelService.PDFResult> records = byFile.get(key);
+                BitSet done = placed.computeIfAbsent(key, k -> new BitSet());
+                int form = PDFToExcelService.recordIndex(rowName);
+                if (form >= 0 && form < records.size() && !done.get(form)) {
+                    PDFToExcelService.PDFResult record = records.get(form);
+                    Row row = pdfToExcelService.writeDataRow(sheet, nextRow[0]++, record.data, record.rowName());
+                    copier.copyRow(sheetIndex, source, row, PDFToExcelService.HEADERS.length);
+                    done.set(form);
+                    counts[0]++;
+                }
+                if (source.rowNum == oldRows.lastRowByFile.getOrDefault(name, -1)) {
+                    flush.accept(key);
+                }
+            });
+
+            // New files
+            for (String name : byFile.keySet()) {
+                flush.accept(name);
+            }
+            copier.extendAutoFilter(dataSheet, nextRow[0] - 1);
+            // Rows moved, so cached formula results may be stale until Excel recalculates
+            workbook.setForceFormulaRecalculation(true);
+
+            try (FileOutputStream outputStream = new FileOutputStream(output)) {
+                workbook.write(outputStream);
+            }
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+        return counts;
+    }
+
+    private static void replaceFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    /** Generated rows of the data sheet, collected by pass 1. */
+    private static final class OldRows {
+        // File name -> number of its last row
+        final Map<String, Integer> lastRowByFile = new HashMap<>();
+        // File name -> TID of its first form, in row order
+        final Map<String, String> firstTidByFile = new LinkedHashMap<>();
+
+        void add(int rowNum, String rowName, String tid) {
+            String name = PDFToExcelService.baseFileName(rowName);
+            lastRowByFile.merge(name, rowNum, Math::max);
+            if (PDFToExcelService.recordIndex(rowName) == 0 && !tid.isEmpty()) {
+                firstTidByFile.putIfAbsent(name, tid);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.omori.pdfconvertor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExtractionIndexTest {
+
+    @TempDir
+    Path indexDir;
+
+    @TempDir
+    File folder;
+
+    @Test
+    void lookupFindsEveryIndexedField() throws IOException {
+        ExtractionIndex index = new ExtractionIndex(indexDir);
+        index.append(folder, List.of(result(0, "000000123456", "12395678", "SN-1")), 1_000L);
+
+        List<ExtractionIndex.Hit> tidHits = index.lookup("1239 5678");
+        assertEquals(1, tidHits.size());
+        ExtractionIndex.Hit hit = tidHits.get(0);
+        assertEquals(ExtractionIndex.Field.TID, hit.field);
+        assertEquals("12395678", hit.value);
+        assertEquals(folder.getAbsolutePath(), hit.folder);
+        assertEquals("form-0.pdf", hit.file);
+        assertEquals(1_000L, hit.extractedAt);
+
+        assertEquals(ExtractionIndex.Field.TID00, index.lookup("12005678").get(0).field);
+        assertEquals(ExtractionIndex.Field.MID, index.lookup("000000123456").get(0).field);
+        assertEquals(ExtractionIndex.Field.SERIAL, index.lookup("SN-1").get(0).field);
+        assertTrue(index.lookup("1239567").isEmpty());
+        assertTrue(index.lookup(" ").isEmpty());
+    }
+
+    @Test
+    void lookupReturnsNewestFirst() throws IOException {
+        ExtractionIndex index = new ExtractionIndex(indexDir);
+        index.append(folder, List.of(result(0, "111", "12340001", "SN-A")), 1_000L);
+        index.append(folder, List.of(result(1, "111", "12340002", "SN-B")), 2_000L);
+
+        List<ExtractionIndex.Hit> hits = index.lookup("111");
+        assertEquals(2, hits.size());
+        assertEquals(2_000L, hits.get(0).extractedAt);
+        assertEquals("form-1.pdf", hits.get(0).file);
+        assertEquals(1_000L, hits.get(1).extractedAt);
+    }
+
+    @Test
+    void compactionKeepsEveryValue() throws IOException {
+        ExtractionIndex index = new ExtractionIndex(indexDir);
+        int conversions = 40;
+        for (int c = 0; c < conversions; c++) {
+            List<PDFToExcelService.PDFResult> results = new ArrayList<>();
+            for (int r = 0; r < 25; r++) {
+                int n = c * 25 + r;
+                results.add(result(n, String.format("MID%06d", n), String.format("1200%04d", n), "SN" + n));
+            }
+            index.append(folder, results, c);
+        }
+
+        // No tier is left with a full batch of segments, and the cascade reached a higher tier
+        Map<Integer, Integer> segmentsPerTier = segmentsPerTier();
+        assertTrue(segmentsPerTier.values().stream().allMatch(n -> n < ExtractionIndex.MERGE_FACTOR), segmentsPerTier.toString());
+        assertTrue(segmentsPerTier.keySet().stream().anyMatch(tier -> tier > 0), segmentsPerTier.toString());
+        for (int n = 0; n < conversions * 25; n++) {
+            List<ExtractionIndex.Hit> hits = index.lookup(String.format("1200%04d", n));
+            assertEquals(1, hits.size(), "TID of row " + n);
+            assertEquals("form-" + n + ".pdf", hits.get(0).file);
+            assertEquals(n / 25, hits.get(0).extractedAt);
+            assertEquals(1, index.lookup("SN" + n).size(), "serial of row " + n);
+        }
+    }
+
+    @Test
+    void undeletableMergedSegmentsAreSkippedAndRemovedLater() throws IOException {
+        // Windows refuses to delete a segment that a lookup still maps
+        boolean[] locked = {true};
+        ExtractionIndex index = new ExtractionIndex(indexDir) {
+            @Override
+            void deleteSegment(Path segment) throws IOException {
+                if (locked[0]) {
+                    throw new IOException("The process cannot access the file because it is being used by another process");
+                }
+                super.deleteSegment(segment);
+            }
+        };
+        for (int c = 0; c < ExtractionIndex.MERGE_FACTOR * 2; c++) {
+            index.append(folder, List.of(result(c, "MID" + c, String.format("1200%04d", c), "SN" + c)), c);
+        }
+
+        // Each merge ran once: its inputs are tombstoned instead of being merged again and again
+        assertEquals(2 * ExtractionIndex.MERGE_FACTOR, countFiles("segment-*.idx.merged"));
+        assertEquals(2 * ExtractionIndex.MERGE_FACTOR + 2, countFiles("segment-*.idx"));
+        for (int c = 0; c < ExtractionIndex.MERGE_FACTOR * 2; c++) {
+            assertEquals(1, index.lookup("SN" + c).size(), "serial of row " + c);
+        }
+
+        locked[0] = false;
+        index.append(folder, List.of(result(99, "MID99", "12009999", "SN99")), 99);
+        assertEquals(0, countFiles("segment-*.idx.merged"));
+        assertEquals(3, countFiles("segment-*.idx"));
+        assertEquals(1, index.lookup("SN0").size());
+    }
+
+    private int countFiles(String glob) throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexDir, glob)) {
+            for (Path ignored : stream) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Map<Integer, Integer> segmentsPerTier() throws IOException {
+        Map<Integer, Integer> counts = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexDir, "segment-*.idx")) {
+            for (Path segment : stream) {
+                counts.merge(ExtractionIndex.tier(Files.size(segment)), 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private static PDFToExcelService.PDFResult result(int index, String mid, String tid, String serial) {
+        PDFData data = new PDFData();
+        data.setMerchantId(mid);
+        data.setTerminalId(tid);
+        data.setTerminalId00(FieldNormalizer.terminalId00(tid));
+        data.setSerialNumber(serial);
+        return new PDFToExcelService.PDFResult(index, data, "form-" + index + ".pdf");
+    }
+}
@@ -0,0 +1,100 @@
+package com.omori.pdfconvertor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FieldNormalizerTest {
+
+    private static final int SAMPLES = 20_000;
+
+    @Test
+    void trimMatchesSubstringTrim() {
+        Random random = new Random(1);
+        for (int i = 0; i < SAMPLES; i++) {
+            String value = randomText(random, "ab1 \n\t\r\u000B\f\u0001ăĐ(");
+            int start = random.nextInt(value.length() + 1);
+            int end = start + random.nextInt(value.length() - start + 1);
+            assertEquals(value.substring(start, end).trim(), FieldNormalizer.trim(value, start, end), describe(value));
+        }
+    }
+
+    @Test
+    void stripWhitespaceMatchesOldTidChain() {
+        Random random = new Random(2);
+        for (int i = 0; i < SAMPLES; i++) {
+            String tid = randomText(random, "0123456789 \r\n");
+            String expected = tid.trim().replace(" ", "").replace("\n", "").replace("\r", "").trim();
+            assertEquals(expected, FieldNormalizer.stripWhitespace(tid), describe(tid));
+        }
+    }
+
+    @Test
+    void stripWhitespaceJoinsWrappedMid() {
+        // The old MID chain only removed spaces, so a MID wrapped by PDFBox kept its line break
+        String mid = "123456\n789012\n";
+        assertEquals("123456\n789012", mid.trim().replace(" ", "").trim());
+        assertEquals("123456789012", FieldNormalizer.stripWhitespace(mid));
+        assertEquals("123456789012", FieldNormalizer.stripWhitespace(" 123456 \r\n789012 "));
+    }
+
+    @Test
+    void collapseWhitespaceMatchesOldNotesChain() {
+        Random random = new Random(3);
+        for (int i = 0; i < SAMPLES; i++) {
+            String notes = randomText(random, "ab ăĐ.\n\t\r\u000B\f\u0001");
+            String expected = notes.trim().replaceAll("\\s+", " ").trim();
+            assertEquals(expected, FieldNormalizer.collapseWhitespace(notes), describe(notes));
+        }
+    }
+
+    @Test
+    void cutAtFirstNonAlphanumericMatchesOldDeviceChain() {
+        Random random = new Random(4);
+        for (int i = 0; i < SAMPLES; i++) {
+            String device = randomText(random, "aZ09  \n\t(-/[ă");
+            // The old chain threw on values made only of separators (split returns no parts); those now give ""
+            String[] parts = device.trim().split("[^a-zA-Z0-9 ]+");
+            String expected = parts.length > 0 ? parts[0].trim() : "";
+            assertEquals(expected, FieldNormalizer.cutAtFirstNonAlphanumeric(device), describe(device));
+        }
+        assertEquals("PAX A920", FieldNormalizer.cutAtFirstNonAlphanumeric("PAX A920 (Android)"));
+    }
+
+    @Test
+    void terminalId00MatchesOldRule() {
+        Random random = new Random(5);
+        for (int i = 0; i < SAMPLES; i++) {
+            String tid = randomText(random, "01239");
+            String expected = tid.length() >= 4 && tid.substring(2, 4).equals("39")
+                    ? tid.substring(0, 2) + "00" + tid.substring(4) : tid;
+            assertEquals(expected, FieldNormalizer.terminalId00(tid), describe(tid));
+        }
+        assertEquals("12005678", FieldNormalizer.terminalId00("12395678"));
+    }
+
+    @Test
+    void cleanValuesAreNotCopied() {
+        String tid = "12395678";
+        assertSame(tid, FieldNormalizer.stripWhitespace(tid));
+        assertSame(tid, FieldNormalizer.collapseWhitespace(tid));
+        assertSame(tid, FieldNormalizer.trim(tid, 0, tid.length()));
+        String plainTid = "12405678";
+        assertSame(plainTid, FieldNormalizer.terminalId00(plainTid));
+    }
+
+    private static String randomText(Random random, String alphabet) {
+        char[] chars = new char[random.nextInt(24)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(chars);
+    }
+
+    private static String describe(String value) {
+        return "input: " + value.replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+    }
+}
@@ -0,0 +1,72 @@
+package com.omori.pdfconvertor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecordSegmenterTest {
+
+    private static final String LEGAL_NAME = RegexExtractor.RECORD_ANCHORS[0];
+    private static final String ADDRESS = RegexExtractor.RECORD_ANCHORS[2];
+    private static final String SERIAL = RegexExtractor.RECORD_ANCHORS[3];
+
+    @Test
+    void singleFormStaysOneRecord() {
+        String[] pages = {
+            LEGAL_NAME + " CÔNG TY A\n" + ADDRESS + " 1 Lê Lợi\n",
+            SERIAL + " SN001\n",
+            "Chữ ký\n"
+        };
+
+        List<int[]> records = RecordSegmenter.segment(pages);
+
+        assertEquals(1, records.size());
+        assertArrayEquals(new int[]{0, 3}, records.get(0));
+        assertEquals(String.join("", pages), RecordSegmenter.join(pages, records.get(0)));
+    }
+
+    @Test
+    void repeatedAnchorStartsNewForm() {
+        String[] pages = {
+            LEGAL_NAME + " CÔNG TY A\n" + ADDRESS + " 1 Lê Lợi\n",
+            SERIAL + " SN001\n",
+            LEGAL_NAME + " CÔNG TY B\n",
+            ADDRESS + " 2 Hai Bà Trưng\n" + SERIAL + " SN002\n",
+            LEGAL_NAME + " CÔNG TY C\n" + ADDRESS + " 3 Trần Hưng Đạo\n" + SERIAL + " SN003\n"
+        };
+
+        List<int[]> records = RecordSegmenter.segment(pages);
+
+        assertEquals(3, records.size());
+        assertArrayEquals(new int[]{0, 2}, records.get(0));
+        assertArrayEquals(new int[]{2, 4}, records.get(1));
+        assertArrayEquals(new int[]{4, 5}, records.get(2));
+        assertEquals(pages[2] + pages[3], RecordSegmenter.join(pages, records.get(1)));
+        assertEquals(pages[4], RecordSegmenter.join(pages, records.get(2)));
+    }
+
+    @Test
+    void pagesWithoutTextAreKept() {
+        String[] pages = {LEGAL_NAME + " CÔNG TY A\n", null, LEGAL_NAME + " CÔNG TY B\n"};
+
+        List<int[]> records = RecordSegmenter.segment(pages);
+
+        assertEquals(2, records.size());
+        assertArrayEquals(new int[]{0, 2}, records.get(0));
+        assertEquals(pages[0], RecordSegmenter.join(pages, records.get(0)));
+    }
+
+    @Test
+    void emptyPageListIsOneEmptyRecord() {
+        String[] pages = {};
+
+        List<int[]> records = RecordSegmenter.segment(pages);
+
+        assertEquals(1, records.size());
+        assertArrayEquals(new int[]{0, 0}, records.get(0));
+        assertEquals("", RecordSegmenter.join(pages, records.get(0)));
+    }
+}
@@ -0,0 +1,191 @@
+package com.omori.pdfconvertor;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.util.Matrix;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * TextOnlyStripper must give the same text as PDFTextStripper configured like PDFToExcelService does.
+ */
+class TextOnlyStripperTest {
+
+    private static final PDFont HELVETICA = PDType1Font.HELVETICA;
+    private static final PDFont TIMES_BOLD = PDType1Font.TIMES_BOLD;
+    private static final PDFont COURIER = PDType1Font.COURIER;
+
+    private interface Content {
+        void draw(PDPageContentStream content) throws IOException;
+    }
+
+    @Test
+    void rotatedPages() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            for (int rotation : new int[]{0, 90, 180, 270}) {
+                PDPage page = addPage(document, TextOnlyStripperTest::form);
+                page.setRotation(rotation);
+            }
+            // Text turned with the page, as scanners and "rotate page" tools produce it
+            addPage(document, content -> {
+                content.transform(new Matrix(0, 1, -1, 0, 595, 0));
+                form(content);
+            }).setRotation(90);
+            addPage(document, content -> {
+                content.transform(new Matrix(0, -1, 1, 0, 0, 842));
+                form(content);
+            }).setRotation(270);
+            // Crop box not at the origin
+            addPage(document, TextOnlyStripperTest::form).setCropBox(new PDRectangle(40, 60, 500, 700));
+            addPage(document, TextOnlyStripperTest::form).setCropBox(new PDRectangle(40, 60, 500, 700));
+            document.getPage(document.getNumberOfPages() - 1).setRotation(90);
+
+            assertSameText(document);
+        }
+    }
+
+    @Test
+    void mixedFontsAndSizesOnOneLine() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            addPage(document, content -> {
+                float x = 50;
+                for (int i = 0; i < 12; i++) {
+                    PDFont font = i % 3 == 0 ? HELVETICA : i % 3 == 1 ? TIMES_BOLD : COURIER;
+                    float size = 6 + (i * 5) % 17;
+                    text(content, font, size, x, 700, "w" + i);
+                    x += font.getStringWidth("w" + i) / 1000 * size + (i % 4) * 1.5f;
+                }
+                // Superscript and subscript through the text rise
+                content.beginText();
+                content.setFont(HELVETICA, 11);
+                content.newLineAtOffset(50, 660);
+                content.showText("m");
+                content.setTextRise(5);
+                content.setFont(HELVETICA, 6);
+                content.showText("2");
+                content.setTextRise(-3);
+                content.showText("i");
+                content.setTextRise(0);
+                content.setFont(TIMES_BOLD, 11);
+                content.showText(" total");
+                content.endText();
+                // Word and character spacing, horizontal scaling
+                content.beginText();
+                content.setFont(COURIER, 9);
+                content.setWordSpacing(7);
+                content.setCharacterSpacing(0.8f);
+                content.setHorizontalScaling(80);
+                content.newLineAtOffset(50, 630);
+                content.showText("spaced out words here");
+                content.endText();
+            });
+            assertSameText(document);
+        }
+    }
+
+    @Test
+    void gappedLinesAndColumns() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            addPage(document, content -> {
+                // Two columns drawn row by row, the right one slightly lower and in a smaller font
+                for (int row = 0; row < 8; row++) {
+                    float y = 760 - row * 14;
+                    text(content, TIMES_BOLD, 13, 50, y, "Label " + row);
+                    text(content, HELVETICA, 7, 320, y - 4 + (row % 3), "value " + row);
+                    text(content, COURIER, 9, 480, y + 3 - row % 2, "#" + row);
+                }
+                // Big font, then a jump to small text a few points below its baseline
+                text(content, TIMES_BOLD, 28, 50, 560, "TITLE");
+                text(content, HELVETICA, 6, 400, 553, "footnote");
+                text(content, HELVETICA, 6, 430, 547, "under");
+                // Text drawn right to left and back
+                text(content, HELVETICA, 10, 300, 500, "right");
+                text(content, HELVETICA, 10, 50, 500, "left");
+                text(content, HELVETICA, 10, 51, 499, "overlapping");
+            });
+            assertSameText(document);
+        }
+    }
+
+    @Test
+    void overprintedDuplicatesAcrossLines() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            addPage(document, content -> {
+                text(content, HELVETICA, 12, 50, 700, "Bold by overprint");
+                text(content, HELVETICA, 12, 50, 680, "next line");
+                text(content, HELVETICA, 12, 50.2f, 700.1f, "Bold by overprint");
+                text(content, HELVETICA, 12, 53, 700, "Bold");
+                text(content, HELVETICA, 12, 50, 660, "last");
+            });
+            assertSameText(document);
+        }
+    }
+
+    @Test
+    void separatelyDrawnAccents() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            addPage(document, content -> {
+                // Accent after its letter, accent before its letter, accent between two letters
+                text(content, HELVETICA, 12, 50, 700, "caf");
+                text(content, HELVETICA, 12, 69.3f, 700, "e");
+                text(content, HELVETICA, 12, 70.5f, 702, "\u00B4");
+                text(content, HELVETICA, 12, 50, 680, "\u00A8");
+                text(content, HELVETICA, 12, 49.5f, 680, "u ber");
+                text(content, TIMES_BOLD, 14, 50, 660, "na");
+                text(content, TIMES_BOLD, 14, 60, 663, "\u02DC");
+                text(content, TIMES_BOLD, 14, 64, 660, "ve");
+            });
+            assertSameText(document);
+        }
+    }
+
+    private static void form(PDPageContentStream content) throws IOException {
+        text(content, TIMES_BOLD, 16, 60, 780, "HOA DON BAN HANG");
+        text(content, HELVETICA, 10, 60, 750, "Ten doanh nghiep:");
+        text(content, COURIER, 10, 200, 750, "CONG TY ABC");
+        text(content, HELVETICA, 10, 60, 735, "Ma so thue:");
+        text(content, COURIER, 10, 200, 736, "0101234567");
+        text(content, HELVETICA, 8, 420, 735, "TID 12345678");
+    }
+
+    private static PDPage addPage(PDDocument document, Content drawing) throws IOException {
+        PDPage page = new PDPage(PDRectangle.A4);
+        document.addPage(page);
+        try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+            drawing.draw(content);
+        }
+        return page;
+    }
+
+    private static void text(PDPageContentStream content, PDFont font, float size, float x, float y, String text)
+            throws IOException {
+        content.beginText();
+        content.setFont(font, size);
+        content.newLineAtOffset(x, y);
+        content.showText(text);
+        content.endText();
+    }
+
+    private static void assertSameText(PDDocument document) throws IOException {
+        PDFTextStripper expected = new PDFTextStripper();
+        expected.setSortByPosition(false);
+        expected.setSuppressDuplicateOverlappingText(true);
+        TextOnlyStripper actual = new TextOnlyStripper();
+        for (int page = 0; page < document.getNumberOfPages(); page++) {
+            expected.setStartPage(page + 1);
+            expected.setEndPage(page + 1);
+            String text = expected.getText(document);
+            assertTrue(text.trim().length() > 0, "page " + (page + 1) + " has text");
+            assertEquals(text, actual.getText(document, page), "page " + (page + 1));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.omori.pdfconvertor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextStoreTest {
+
+    private static final long MODIFIED_AT = 1_700_000_000_000L;
+
+    @TempDir
+    File folder;
+
+    @Test
+    void unchangedPdfIsCurrent() throws IOException {
+        File pdf = pdf("a.pdf", "%PDF-1.4 a", MODIFIED_AT);
+        store(pdf);
+
+        try (TextStore.Reader reader = new TextStore.Reader(TextStore.storeFileFor(folder))) {
+            assertTrue(reader.isCurrent(pdf));
+            assertArrayEquals(new String[]{"page 1", "page 2"}, reader.pageTexts("a.pdf"));
+        }
+    }
+
+    @Test
+    void olderOrNewerCopyIsChanged() throws IOException {
+        File pdf = pdf("a.pdf", "%PDF-1.4 a", MODIFIED_AT);
+        store(pdf);
+
+        try (TextStore.Reader reader = new TextStore.Reader(TextStore.storeFileFor(folder))) {
+            assertTrue(pdf.setLastModified(MODIFIED_AT - 60_000));
+            assertFalse(reader.isCurrent(pdf), "restored from an older backup");
+            assertTrue(pdf.setLastModified(MODIFIED_AT + 60_000));
+            assertFalse(reader.isCurrent(pdf), "modified");
+            assertTrue(pdf.setLastModified(MODIFIED_AT + 1_000));
+            assertTrue(reader.isCurrent(pdf), "within the entry time resolution");
+        }
+    }
+
+    @Test
+    void differentLengthIsChanged() throws IOException {
+        File pdf = pdf("a.pdf", "%PDF-1.4 a", MODIFIED_AT);
+        store(pdf);
+        pdf("a.pdf", "%PDF-1.4 longer", MODIFIED_AT);
+
+        try (TextStore.Reader reader = new TextStore.Reader(TextStore.storeFileFor(folder))) {
+            assertFalse(reader.isCurrent(pdf));
+            assertFalse(reader.isCurrent(new File(folder, "missing.pdf")));
+        }
+    }
+
+    @Test
+    void copiedEntriesKeepTheirLength() throws IOException {
+        File pdf = pdf("a.pdf", "%PDF-1.4 a", MODIFIED_AT);
+        store(pdf);
+        try (TextStore textStore = TextStore.create(folder)) {
+            textStore.copyFrom(TextStore.storeFileFor(folder), name -> true);
+            textStore.commit();
+        }
+
+        try (TextStore.Reader reader = new TextStore.Reader(TextStore.storeFileFor(folder))) {
+            assertTrue(reader.isCurrent(pdf));
+        }
+    }
+
+    private void store(File pdf) throws IOException {
+        try (TextStore textStore = TextStore.create(folder)) {
+            textStore.put(pdf, new String[]{"page 1", "page 2"});
+            textStore.commit();
+        }
+    }
+
+    private File pdf(String name, String content, long modifiedAt) throws IOException {
+        File pdf = new File(folder, name);
+        Files.write(pdf.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        assertTrue(pdf.setLastModified(modifiedAt));
+        return pdf;
+    }
+}
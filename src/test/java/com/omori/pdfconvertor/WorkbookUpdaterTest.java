@@ -0,0 +1,302 @@
+package com.omori.pdfconvertor;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs updates over small workbooks. The "PDFs" are text files read by {@link FakeExtraction}:
+ * one line per merchant form, {@code businessName|TID}.
+ */
+class WorkbookUpdaterTest {
+
+    private static final int BUSINESS_NAME_COLUMN = 1;
+    private static final int TID_COLUMN = 8;
+    private static final int NOTE_COLUMN = PDFToExcelService.HEADERS.length;
+    private static final int FORMULA_COLUMN = NOTE_COLUMN + 1;
+    // Files written before the conversion, and files changed after it (beyond the mtime slack)
+    private static final long BEFORE = System.currentTimeMillis() - 3_600_000;
+    private static final long AFTER = System.currentTimeMillis() + 60_000;
+
+    private static String indexSetting;
+
+    @TempDir
+    File folder;
+
+    private final FakeExtraction service = new FakeExtraction();
+
+    @BeforeAll
+    static void disableIndex() {
+        indexSetting = System.setProperty(ExtractionIndex.ENABLED_PROPERTY, "off");
+    }
+
+    @AfterAll
+    static void restoreIndex() {
+        if (indexSetting == null) {
+            System.clearProperty(ExtractionIndex.ENABLED_PROPERTY);
+        } else {
+            System.setProperty(ExtractionIndex.ENABLED_PROPERTY, indexSetting);
+        }
+    }
+
+    @Test
+    void changedAndNewFiles() throws IOException {
+        pdf("a.pdf", BEFORE, "A|11110001");
+        pdf("b.pdf", BEFORE, "B|11110002");
+        pdf("c.pdf", BEFORE, "C|11110003");
+        convert();
+        annotate(sheet -> {
+            note(sheet, 2, "b note");
+            comment(sheet, 2, "check b");
+        });
+        assertTrue(update().startsWith("Không có thay đổi"));
+
+        pdf("b.pdf", AFTER, "B changed|11110002");
+        pdf("d.pdf", AFTER, "D|11110004");
+        update();
+
+        try (XSSFWorkbook workbook = read()) {
+            XSSFSheet sheet = workbook.getSheetAt(0);
+            assertEquals(List.of("a.pdf", "b.pdf", "c.pdf", "d.pdf"), rowNames(sheet));
+            assertEquals("B changed", text(sheet, 2, BUSINESS_NAME_COLUMN));
+            assertEquals("b note", text(sheet, 2, NOTE_COLUMN));
+            assertEquals("check b", sheet.getRow(2).getCell(BUSINESS_NAME_COLUMN).getCellComment().getString().getString());
+            assertEquals("D", text(sheet, 4, BUSINESS_NAME_COLUMN));
+        }
+    }
+
+    @Test
+    void renamedFileTakesOverRowsWithSameTid() throws IOException {
+        pdf("a.pdf", BEFORE, "A|11110001");
+        pdf("b.pdf", BEFORE, "B|11110002");
+        pdf("c.pdf", BEFORE, "C|11110003");
+        convert();
+        annotate(sheet -> note(sheet, 2, "b note"));
+
+        Files.delete(new File(folder, "b.pdf").toPath());
+        pdf("z-renamed.pdf", AFTER, "B|11110002");
+        update();
+
+        try (XSSFWorkbook workbook = read()) {
+            XSSFSheet sheet = workbook.getSheetAt(0);
+            assertEquals(List.of("a.pdf", "z-renamed.pdf", "c.pdf"), rowNames(sheet));
+            assertEquals("b note", text(sheet, 2, NOTE_COLUMN));
+        }
+    }
+
+    @Test
+    void consolidatedPdfWithFewerForms() throws IOException {
+        pdf("a.pdf", BEFORE, "A|11110001");
+        pdf("m.pdf", BEFORE, "M1|22220001", "M2|22220002", "M3|22220003");
+        pdf("z.pdf", BEFORE, "Z|33330001");
+        convert();
+        annotate(sheet -> {
+            note(sheet, 3, "second form");
+            note(sheet, 4, "third form");
+            note(sheet, 5, "z note");
+        });
+
+        pdf("m.pdf", AFTER, "M1|22220001", "M2 changed|22220002");
+        update();
+
+        try (XSSFWorkbook workbook = read()) {
+            XSSFSheet sheet = workbook.getSheetAt(0);
+            assertEquals(List.of("a.pdf", "m.pdf #1", "m.pdf #2", "z.pdf"), rowNames(sheet));
+            assertEquals("M2 changed", text(sheet, 3, BUSINESS_NAME_COLUMN));
+            assertEquals("second form", text(sheet, 3, NOTE_COLUMN));
+            assertEquals("z note", text(sheet, 4, NOTE_COLUMN));
+        }
+    }
+
+    @Test
+    void formulaAndCommentMoveWithTheirRow() throws IOException {
+        pdf("a.pdf", BEFORE, "A|11110001");
+        pdf("b.pdf", BEFORE, "B|11110002");
+        convert();
+        annotate(sheet -> {
+            sheet.getRow(2).createCell(NOTE_COLUMN).setCellValue(21);
+            sheet.getRow(2).createCell(FORMULA_COLUMN).setCellFormula("K3*2");
+            comment(sheet, 2, "check b");
+        });
+
+        // a.pdf gains a second form, pushing b.pdf one row down
+        pdf("a.pdf", AFTER, "A|11110001", "A2|11110009");
+        update();
+
+        try (XSSFWorkbook workbook = read()) {
+            XSSFSheet sheet = workbook.getSheetAt(0);
+            assertEquals(List.of("a.pdf #1", "a.pdf #2", "b.pdf"), rowNames(sheet));
+            Row moved = sheet.getRow(3);
+            assertEquals(21, moved.getCell(NOTE_COLUMN).getNumericCellValue());
+            assertEquals("K4*2", moved.getCell(FORMULA_COLUMN).getCellFormula());
+            assertEquals("check b", moved.getCell(BUSINESS_NAME_COLUMN).getCellComment().getString().getString());
+            assertNull(sheet.getRow(2).getCell(BUSINESS_NAME_COLUMN).getCellComment());
+        }
+    }
+
+    @Test
+    void sortedSheetKeepsEachFormOnItsRow() throws IOException {
+        pdf("a.pdf", BEFORE, "A|11110001");
+        pdf("m.pdf", BEFORE, "M1|22220001", "M2|22220002", "M3|22220003");
+        convert();
+        annotate(sheet -> {
+            // Sorted descending by file name column, as with Excel's sort
+            List<String[]> rows = new ArrayList<>();
+            for (int r = 1; r <= sheet.getLastRowNum(); r++) {
+                String[] values = new String[PDFToExcelService.HEADERS.length];
+                for (int c = 0; c < values.length; c++) {
+                    values[c] = text(sheet, r, c);
+                }
+                rows.add(values);
+            }
+            Collections.reverse(rows);
+            for (int r = 1; r <= rows.size(); r++) {
+                for (int c = 0; c < PDFToExcelService.HEADERS.length; c++) {
+                    // Replaced, not set: setCellValue on an inline string cell leaves the inline text
+                    sheet.getRow(r).createCell(c).setCellValue(rows.get(r - 1)[c]);
+                }
+                note(sheet, r, rows.get(r - 1)[0] + " note");
+            }
+        });
+
+        pdf("m.pdf", AFTER, "M1 changed|22220001", "M2 changed|22220002", "M3 changed|22220003");
+        update();
+
+        try (XSSFWorkbook workbook = read()) {
+            XSSFSheet sheet = workbook.getSheetAt(0);
+            assertEquals(List.of("m.pdf #3", "m.pdf #2", "m.pdf #1", "a.pdf"), rowNames(sheet));
+            for (int r = 1; r <= 3; r++) {
+                String rowName = text(sheet, r, 0);
+                assertEquals("M" + rowName.charAt(rowName.length() - 1) + " changed", text(sheet, r, BUSINESS_NAME_COLUMN));
+                assertEquals(rowName + " note", text(sheet, r, NOTE_COLUMN));
+            }
+            assertEquals("22220001", text(sheet, 3, TID_COLUMN));
+        }
+    }
+
+    private void pdf(String name, long modifiedAt, String... forms) throws IOException {
+        File file = new File(folder, name);
+        Files.write(file.toPath(), List.of(forms), StandardCharsets.UTF_8);
+        assertTrue(file.setLastModified(modifiedAt));
+    }
+
+    private void convert() {
+        String result = service.convertFolderToExcel(folder, null);
+        assertTrue(result.startsWith("Đã xử lý"), result);
+    }
+
+    private String update() {
+        String result = new WorkbookUpdater(service).updateFolderExcel(folder, null);
+        assertTrue(!result.startsWith("Lỗi") && !result.startsWith("Không cập nhật"), result);
+        return result;
+    }
+
+    private File workbookFile() {
+        return new File(PDFToExcelService.excelPathFor(folder));
+    }
+
+    /** Edits the data sheet like a user would in Excel, saving the workbook in place. */
+    private void annotate(Consumer<XSSFSheet> edit) throws IOException {
+        try (XSSFWorkbook workbook = read()) {
+            edit.accept(workbook.getSheetAt(0));
+            try (OutputStream out = new FileOutputStream(workbookFile())) {
+                workbook.write(out);
+            }
+        }
+    }
+
+    private XSSFWorkbook read() throws IOException {
+        try (InputStream in = new FileInputStream(workbookFile())) {
+            return new XSSFWorkbook(in);
+        }
+    }
+
+    private static void note(XSSFSheet sheet, int rowNum, String note) {
+        sheet.getRow(rowNum).createCell(NOTE_COLUMN).setCellValue(note);
+    }
+
+    private static void comment(XSSFSheet sheet, int rowNum, String text) {
+        Drawing<?> drawing = sheet.createDrawingPatriarch();
+        ClientAnchor anchor = sheet.getWorkbook().getCreationHelper().createClientAnchor();
+        anchor.setRow1(rowNum);
+        anchor.setCol1(BUSINESS_NAME_COLUMN + 1);
+        anchor.setRow2(rowNum + 3);
+        anchor.setCol2(BUSINESS_NAME_COLUMN + 3);
+        Comment comment = drawing.createCellComment(anchor);
+        comment.setString(new XSSFRichTextString(text));
+        sheet.getRow(rowNum).getCell(BUSINESS_NAME_COLUMN).setCellComment(comment);
+    }
+
+    private static List<String> rowNames(XSSFSheet sheet) {
+        List<String> names = new ArrayList<>();
+        for (int r = 1; r <= sheet.getLastRowNum(); r++) {
+            names.add(text(sheet, r, 0));
+        }
+        return names;
+    }
+
+    private static String text(XSSFSheet sheet, int rowNum, int column) {
+        Row row = sheet.getRow(rowNum);
+        assertNotNull(row, "row " + rowNum);
+        Cell cell = row.getCell(column);
+        return cell != null ? cell.getStringCellValue() : "";
+    }
+
+    /** Extraction stand-in: each line of a "PDF" is one merchant form. */
+    private static final class FakeExtraction extends PDFToExcelService {
+        FakeExtraction() {
+            super(1);
+        }
+
+        @Override
+        int extractAll(File[] pdfFiles, String label, Consumer<PDFResult> sink, BiConsumer<Integer, String[]> textSink,
+                       Consumer<Integer> progressCallback) {
+            for (int i = 0; i < pdfFiles.length; i++) {
+                List<String> forms;
+                try {
+                    forms = Files.readAllLines(pdfFiles[i].toPath(), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                for (int form = 0; form < forms.size(); form++) {
+                    String[] fields = forms.get(form).split("\\|");
+                    PDFData data = new PDFData();
+                    data.setBusinessName(fields[0]);
+                    data.setTerminalId(fields[1]);
+                    data.setTerminalId00(FieldNormalizer.terminalId00(fields[1]));
+                    sink.accept(new PDFResult(i, form, forms.size(), data, pdfFiles[i].getName()));
+                }
+            }
+            return pdfFiles.length;
+        }
+    }
+}